@@ -0,0 +1,64 @@
+/*
+ *           DO WHAT THE FUCK YOU WANT TO PUBLIC LICENSE
+ * Everyone is permitted to copy and distribute verbatim or modified
+ * copies of this license document, and changing it is allowed as long
+ * as the name is changed. You just DO WHAT THE FUCK YOU WANT TO.
+ *                http://www.wtfpl.net/txt/copying/
+ */
+
+package org.schubert.bloom;
+
+/**
+ * How a Bloom Filter maps a hash value to a bit index in [0, bitSize).
+ * The hash values carry 32 bits of entropy, so the fast mappings are limited to at most 2^32 bits.
+ */
+public enum BitIndexing {
+    /** Remainder of the division by bit size, works for any bit size, but a 64-bit division is slow. */
+    MODULO,
+
+    /** Keep the low bits of the hash value, the bit size must be a power of two. */
+    MASK,
+
+    /** Multiply the 32-bit hash value by bit size and keep the high half, i.e. Lemire's fast range reduction. */
+    MULTIPLY_SHIFT;
+
+    /** The maximum bit size of the fast mappings. */
+    public static final long MAX_FAST_BIT_SIZE = 1L << 32;
+
+    /**
+     * Check whether this mapping can be used for a bit size.
+     * @param bitSize the number bits to hold the Bloom Filter.
+     * @return true if this mapping can be used.
+     */
+    public boolean supports(long bitSize) {
+        if (bitSize <= 0) {
+            return false;
+        }
+
+        switch (this) {
+            case MASK:
+                return (bitSize <= MAX_FAST_BIT_SIZE) && ((bitSize & (bitSize - 1)) == 0);
+            case MULTIPLY_SHIFT:
+                return (bitSize <= MAX_FAST_BIT_SIZE);
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Map a hash value to a bit index.
+     * @param hashValue the hash value
+     * @param bitSize   the number bits to hold the Bloom Filter.
+     * @return the bit index in [0, bitSize).
+     */
+    public long toBitIndex(long hashValue, long bitSize) {
+        switch (this) {
+            case MASK:
+                return hashValue & (bitSize - 1);
+            case MULTIPLY_SHIFT:
+                return ((hashValue & 0xffffffffL) * bitSize) >>> 32;
+            default:
+                return Math.abs(hashValue) % bitSize;
+        }
+    }
+}
@@ -26,6 +26,26 @@ public interface BloomFilter<T> {
     boolean mayContain(byte[] key);
     boolean mayContain(T elem);
 
+    /**
+     * Add a element whose hash values are held by a BloomKey. BloomKey caches the Murmur hash values of
+     * SimpleBloomFilter, the implementations which hash otherwise add the key bytes, without sharing the hash.
+     * @param key the key and its hash values
+     */
+    default void addHashed(BloomKey key) {
+        addElem(key.getKey(), key.getOffset(), key.getLength());
+    }
+
+    /**
+     * Return true if the element whose hash values are held by a BloomKey may have been added. BloomKey caches
+     * the Murmur hash values of SimpleBloomFilter, the implementations which hash otherwise probe the key bytes,
+     * without sharing the hash.
+     * @param key the key and its hash values
+     * @return true if the element may have been added.
+     */
+    default boolean mayContainHashed(BloomKey key) {
+        return mayContain(key.getKey(), key.getOffset(), key.getLength());
+    }
+
     void clear();
     boolean isEmpty();
 }
\ No newline at end of file
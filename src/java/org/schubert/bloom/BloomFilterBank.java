@@ -0,0 +1,476 @@
+/*
+ *           DO WHAT THE FUCK YOU WANT TO PUBLIC LICENSE
+ * Everyone is permitted to copy and distribute verbatim or modified
+ * copies of this license document, and changing it is allowed as long
+ * as the name is changed. You just DO WHAT THE FUCK YOU WANT TO.
+ *                http://www.wtfpl.net/txt/copying/
+ */
+
+package org.schubert.bloom;
+
+/**
+ * A bank of Bloom Filters of the same shape, e.g. one per data segment, which are queried all at once.
+ * <p>
+ * The Bloom Filters are stored transposed (bit-sliced, as in BitFunnel): for each bit index there is a row of
+ * sliceWordNum long words, and bit s of the row is the bit of the Bloom Filter in slot s. A key is hashed only once
+ * for the whole bank, each of its k bit indexes selects a row, and ANDing the k rows gives the bitmask of all the
+ * slots which may contain the key. Querying N Bloom Filters costs k row reads instead of N * k hash calculations
+ * and cache misses; for up to 512 slots a row is a single cache line.
+ * </p>
+ * <p>
+ * Slots are added and retired incrementally, a retired slot is cleared and reused by a later addSegment().
+ * The bit positions are the same as SimpleBloomFilter of the same bit size, number of hash functions and bit
+ * indexing, so an existing SimpleBloomFilter can be loaded into a slot.
+ * </p>
+ * This class is not thread-safe.
+ * @param <T> type of the elements
+ */
+public class BloomFilterBank<T> {
+    /* The number bits of each Bloom Filter, i.e. the number of rows. */
+    private final long mBitSize;
+
+    /* The number of hash functions. */
+    private final int kHashNum;
+
+    /* How to map a hash value to a bit index. */
+    private final BitIndexing bitIndexing;
+
+    /* The maximum number of slots. */
+    private final int capacity;
+
+    /* The number of long words in a row. */
+    private final int sliceWordNum;
+
+    /* The rows, bit (bitIndex, slot) is bit (slot % 64) of word [bitIndex * sliceWordNum + slot / 64]. */
+    private final long[] slices;
+
+    /* The slots in use. */
+    private final long[] activeSlots;
+
+    /* Currently number of added elements of each slot. */
+    private final long[] currentElemNums;
+
+    /* Stream the objects into key bytes, or null to use their toString(). */
+    private Funnel<? super T> funnel = null;
+
+    /**
+     * Construct a empty bank of Bloom Filters by their shape.
+     * @param bitSize     The number bits of each Bloom Filter.
+     * @param hashNum     The number of hash function to filter a element.
+     * @param bitIndexing How to map a hash value to a bit index, it must support the bit size.
+     * @param capacity    The maximum number of Bloom Filters.
+     * @throws IllegalArgumentException when some arguments invalid
+     */
+    public BloomFilterBank(long bitSize, int hashNum, BitIndexing bitIndexing, int capacity)
+            throws IllegalArgumentException {
+        /* Sanity check of the arguments. */
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+
+        int wordNum = (capacity + Long.SIZE - 1) / Long.SIZE;
+        if ((bitSize <= 0) || (bitSize > Integer.MAX_VALUE / wordNum)) {
+            throw new IllegalArgumentException("Invalid bit size: " + bitSize
+                    + ", should within (0, " + (Integer.MAX_VALUE / wordNum) + "] for capacity " + capacity);
+        }
+
+        if ((hashNum <= 0) || (hashNum > SimpleBloomFilter.MAX_HASH_NUM)) {
+            throw new IllegalArgumentException("Invalid number of hash function: " + hashNum);
+        }
+
+        if (!bitIndexing.supports(bitSize)) {
+            throw new IllegalArgumentException("Invalid bit size: " + bitSize + " for bit indexing " + bitIndexing);
+        }
+
+        this.mBitSize        = bitSize;
+        this.kHashNum        = hashNum;
+        this.bitIndexing     = bitIndexing;
+        this.capacity        = capacity;
+        this.sliceWordNum    = wordNum;
+        this.slices          = new long[(int) bitSize * wordNum];
+        this.activeSlots     = new long[wordNum];
+        this.currentElemNums = new long[capacity];
+    }
+
+    /**
+     * Construct a empty bank of Bloom Filters by their shape, which hashes the objects by a Funnel instead of
+     * their toString().
+     * @param bitSize     The number bits of each Bloom Filter.
+     * @param hashNum     The number of hash function to filter a element.
+     * @param bitIndexing How to map a hash value to a bit index, it must support the bit size.
+     * @param capacity    The maximum number of Bloom Filters.
+     * @param funnel      Stream the objects into key bytes, or null to use their toString().
+     * @throws IllegalArgumentException when some arguments invalid
+     */
+    public BloomFilterBank(long bitSize, int hashNum, BitIndexing bitIndexing, int capacity, Funnel<? super T> funnel)
+            throws IllegalArgumentException {
+        this(bitSize, hashNum, bitIndexing, capacity);
+        this.funnel = funnel;
+    }
+
+    /**
+     * Construct a empty bank of Bloom Filters by expected number of elements of each Bloom Filter, and expected
+     * False Positive Probability, the shape is the same as SimpleBloomFilter(elemNum, errorRate).
+     * @param elemNum   The expected number of elements to be added into each Bloom Filter.
+     * @param errorRate Expected False Positive Probability.
+     * @param capacity  The maximum number of Bloom Filters.
+     * @throws IllegalArgumentException when some arguments invalid
+     */
+    public BloomFilterBank(long elemNum, double errorRate, int capacity)
+            throws IllegalArgumentException {
+        this(bitSizeOf(elemNum, errorRate), hashNumOf(elemNum, errorRate), BitIndexing.MODULO, capacity);
+    }
+
+    /**
+     * Get the number bits of each Bloom Filter.
+     * @return the bit size.
+     */
+    public long getBitSize() {
+        return mBitSize;
+    }
+
+    /**
+     * Get the number of hash function.
+     * @return the number of hash function.
+     */
+    public int getHashNum() {
+        return kHashNum;
+    }
+
+    /**
+     * Get how to map a hash value to a bit index.
+     * @return the mapping from hash value to bit index.
+     */
+    public BitIndexing getBitIndexing() {
+        return bitIndexing;
+    }
+
+    /**
+     * Get the maximum number of Bloom Filters.
+     * @return the maximum number of Bloom Filters.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the number of long words of a query result, i.e. a bitmask of all the slots.
+     * @return the number of long words.
+     */
+    public int getSliceWordNum() {
+        return sliceWordNum;
+    }
+
+    /**
+     * Get the number of slots in use.
+     * @return the number of slots in use.
+     */
+    public int getSegmentNum() {
+        int num = 0;
+        for (long word : activeSlots) {
+            num += Long.bitCount(word);
+        }
+        return num;
+    }
+
+    /**
+     * Check whether a slot is in use.
+     * @param slot the slot
+     * @return true if the slot is in use.
+     */
+    public boolean isActive(int slot) {
+        return (slot >= 0) && (slot < capacity) && ((activeSlots[slot / Long.SIZE] & (1L << slot)) != 0);
+    }
+
+    /**
+     * Get the current number of added elements of a slot.
+     * @param slot the slot
+     * @return the current number of added elements.
+     */
+    public long getCurrentElemNum(int slot) {
+        checkActive(slot);
+        return currentElemNums[slot];
+    }
+
+    /**
+     * Take a free slot for a new empty Bloom Filter.
+     * @return the slot, or -1 if the bank is full.
+     */
+    public int addSegment() {
+        for (int i = 0; i < sliceWordNum; i++) {
+            long free = ~activeSlots[i];
+            if (free != 0) {
+                int slot = i * Long.SIZE + Long.numberOfTrailingZeros(free);
+                if (slot >= capacity) {
+                    return -1;
+                }
+                activeSlots[i] |= (1L << slot);
+                currentElemNums[slot] = 0;
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Take a free slot and load a existing Bloom Filter into it.
+     * @param bloom the Bloom Filter, it must have the same bit size, number of hash functions, bit indexing and
+     *              Funnel.
+     * @return the slot, or -1 if the bank is full.
+     * @throws IllegalArgumentException when the Bloom Filter is not of the same shape.
+     */
+    public int addSegment(SimpleBloomFilter<T> bloom)
+            throws IllegalArgumentException {
+        if ((bloom.getBitSize() != mBitSize) || (bloom.getHashNum() != kHashNum)
+                || (bloom.getBitIndexing() != bitIndexing) || (bloom.getFunnel() != funnel)) {
+            throw new IllegalArgumentException("Cannot load Bloom Filter of another Funnel, or of bit size "
+                    + bloom.getBitSize()
+                    + ", hash number " + bloom.getHashNum() + " and bit indexing " + bloom.getBitIndexing()
+                    + " into bit size " + mBitSize + ", hash number " + kHashNum + " and bit indexing " + bitIndexing);
+        }
+
+        int slot = addSegment();
+        if (slot < 0) {
+            return slot;
+        }
+
+        long[] bitWords = bloom.getBitWords();
+        for (int i = 0; i < bitWords.length; i++) {
+            long word = bitWords[i];
+            while (word != 0) {
+                long bitIndex = (long) i * Long.SIZE + Long.numberOfTrailingZeros(word);
+                setBit(bitIndex, slot);
+                word &= word - 1;
+            }
+        }
+        currentElemNums[slot] = bloom.getCurrentElemNum();
+        return slot;
+    }
+
+    /**
+     * Retire a slot, its Bloom Filter is cleared and the slot is free to be reused.
+     * @param slot the slot
+     */
+    public void retireSegment(int slot) {
+        checkActive(slot);
+
+        int wordIndex = slot / Long.SIZE;
+        long mask = ~(1L << slot);
+        for (int i = wordIndex; i < slices.length; i += sliceWordNum) {
+            slices[i] &= mask;
+        }
+        activeSlots[wordIndex] &= mask;
+        currentElemNums[slot] = 0;
+    }
+
+    /**
+     * Add a element into the Bloom Filter of a slot.
+     * @param slot   the slot
+     * @param key    the bytes array of element key
+     * @param offset the begin offset of the element key
+     * @param length the valid length of the element key
+     */
+    public void addElem(int slot, byte[] key, int offset, int length) {
+        checkActive(slot);
+
+        for (int i = 0; i < kHashNum; i++) {
+            setBit(bitIndexing.toBitIndex(SimpleBloomFilter.getHashValue(key, offset, length, i), mBitSize), slot);
+        }
+        currentElemNums[slot]++;
+    }
+
+    /**
+     * Add a element into the Bloom Filter of a slot.
+     * @param slot the slot
+     * @param key  the bytes array of element key
+     */
+    public void addElem(int slot, byte[] key) {
+        addElem(slot, key, 0, key.length);
+    }
+
+    /**
+     * Add an object into the Bloom Filter of a slot. The key bytes streamed by the Funnel, or if there is no
+     * Funnel, the output from the object's toString() method is used as input to the hash functions.
+     * @param slot the slot
+     * @param elem the element object
+     */
+    public void addElem(int slot, T elem) {
+        if (funnel == null) {
+            addElem(slot, elem.toString().getBytes(SimpleBloomFilter.CHARSET));
+        } else {
+            ByteKeySink sink = ByteKeySink.get().funnel(elem, funnel);
+            addElem(slot, sink.getBytes(), 0, sink.getLength());
+        }
+    }
+
+    /**
+     * Add a element whose hash values are held by a BloomKey into the Bloom Filter of a slot.
+     * @param slot the slot
+     * @param key  the key and its hash values
+     */
+    public void addHashed(int slot, BloomKey key) {
+        checkActive(slot);
+
+        for (int i = 0; i < kHashNum; i++) {
+            setBit(bitIndexing.toBitIndex(key.getHashValue(i), mBitSize), slot);
+        }
+        currentElemNums[slot]++;
+    }
+
+    /**
+     * Query all the Bloom Filters at once, by a element whose hash values are held by a BloomKey.
+     * @param key      the key and its hash values
+     * @param segments output, at least getSliceWordNum() long words, bit s is set if the slot s may contain the
+     *                 element.
+     * @return true if any slot may contain the element.
+     */
+    public boolean mayContainHashed(BloomKey key, long[] segments) {
+        System.arraycopy(activeSlots, 0, segments, 0, sliceWordNum);
+
+        for (int i = 0; i < kHashNum; i++) {
+            if (!andRow(bitIndexing.toBitIndex(key.getHashValue(i), mBitSize), segments)) {
+                /* definitely not in any slot */
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Query all the Bloom Filters at once.
+     * @param key      the bytes array of element key
+     * @param offset   the begin offset of the element key
+     * @param length   the valid length of the element key
+     * @param segments output, at least getSliceWordNum() long words, bit s is set if the slot s may contain the
+     *                 element.
+     * @return true if any slot may contain the element.
+     */
+    public boolean mayContain(byte[] key, int offset, int length, long[] segments) {
+        System.arraycopy(activeSlots, 0, segments, 0, sliceWordNum);
+
+        for (int i = 0; i < kHashNum; i++) {
+            long bitIndex = bitIndexing.toBitIndex(SimpleBloomFilter.getHashValue(key, offset, length, i), mBitSize);
+            if (!andRow(bitIndex, segments)) {
+                /* definitely not in any slot */
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Query all the Bloom Filters at once.
+     * @param key      the bytes array of element key
+     * @param segments output, bit s is set if the slot s may contain the element.
+     * @return true if any slot may contain the element.
+     */
+    public boolean mayContain(byte[] key, long[] segments) {
+        return mayContain(key, 0, key.length, segments);
+    }
+
+    /**
+     * Query all the Bloom Filters at once.
+     * @param elem     the element object
+     * @param segments output, bit s is set if the slot s may contain the element.
+     * @return true if any slot may contain the element.
+     */
+    public boolean mayContain(T elem, long[] segments) {
+        if (funnel == null) {
+            return mayContain(elem.toString().getBytes(SimpleBloomFilter.CHARSET), segments);
+        }
+
+        ByteKeySink sink = ByteKeySink.get().funnel(elem, funnel);
+        return mayContain(sink.getBytes(), 0, sink.getLength(), segments);
+    }
+
+    /**
+     * Query all the Bloom Filters at once.
+     * @param elem the element object
+     * @return the bitmask of the slots, bit s is set if the slot s may contain the element.
+     */
+    public long[] mayContain(T elem) {
+        long[] segments = new long[sliceWordNum];
+        mayContain(elem, segments);
+        return segments;
+    }
+
+    /**
+     * Clear all the Bloom Filters, the slots are kept in use.
+     */
+    public void clear() {
+        for (int i = 0; i < slices.length; i++) {
+            slices[i] = 0;
+        }
+        for (int i = 0; i < capacity; i++) {
+            currentElemNums[i] = 0;
+        }
+    }
+
+    /**
+     * AND a row into the query result.
+     * @param bitIndex the bit index of the row.
+     * @param segments the query result.
+     * @return false if no slot is left in the query result.
+     */
+    private boolean andRow(long bitIndex, long[] segments) {
+        int row = (int) bitIndex * sliceWordNum;
+        long any = 0;
+        for (int w = 0; w < sliceWordNum; w++) {
+            segments[w] &= slices[row + w];
+            any |= segments[w];
+        }
+        return (any != 0);
+    }
+
+    /**
+     * Set bit of a slot.
+     * @param bitIndex the bit index.
+     * @param slot     the slot
+     */
+    private void setBit(long bitIndex, int slot) {
+        slices[(int) bitIndex * sliceWordNum + slot / Long.SIZE] |= (1L << slot);
+    }
+
+    /**
+     * Check the slot is in use.
+     * @param slot the slot
+     * @throws IllegalArgumentException when the slot is not in use.
+     */
+    private void checkActive(int slot)
+            throws IllegalArgumentException {
+        if (!isActive(slot)) {
+            throw new IllegalArgumentException("Slot not in use: " + slot);
+        }
+    }
+
+    /**
+     * Calculate the bit size the same way as SimpleBloomFilter(elemNum, errorRate).
+     * @param elemNum   The expected number of elements.
+     * @param errorRate Expected False Positive Probability.
+     * @return the bit size.
+     */
+    private static long bitSizeOf(long elemNum, double errorRate) {
+        if (elemNum <= 0) {
+            throw new IllegalArgumentException("Invalid maximum number of elements: " + elemNum);
+        }
+
+        if ((errorRate < 0.00000000001) || (errorRate > 1.0)) {
+            throw new IllegalArgumentException("Invalid false positive probability: " + errorRate);
+        }
+
+        return Math.min(SimpleBloomFilter.calcBitSize(elemNum, errorRate), SimpleBloomFilter.MAX_BIT_SIZE);
+    }
+
+    /**
+     * Calculate the number of hash functions the same way as SimpleBloomFilter(elemNum, errorRate).
+     * @param elemNum   The expected number of elements.
+     * @param errorRate Expected False Positive Probability.
+     * @return the number of hash functions.
+     */
+    private static int hashNumOf(long elemNum, double errorRate) {
+        int hashNum = SimpleBloomFilter.calcHashNum(elemNum, bitSizeOf(elemNum, errorRate));
+        return Math.min(hashNum, SimpleBloomFilter.MAX_HASH_NUM);
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ *           DO WHAT THE FUCK YOU WANT TO PUBLIC LICENSE
+ * Everyone is permitted to copy and distribute verbatim or modified
+ * copies of this license document, and changing it is allowed as long
+ * as the name is changed. You just DO WHAT THE FUCK YOU WANT TO.
+ *                http://www.wtfpl.net/txt/copying/
+ */
+
+package org.schubert.bloom;
+
+/**
+ * Build a SimpleBloomFilter of the fastest configuration for a workload.
+ * <p>
+ * The textbook formulas pick the number of hash functions which minimizes memory for a False Positive
+ * Probability, but each hash function is a probe, i.e. a hash calculation and a likely cache miss.
+ * Spending a bit more memory, a smaller number of hash functions reaches the same False Positive Probability,
+ * and a power of two bit size replaces the 64-bit division by a mask. This builder searches the number of hash
+ * functions, bit size and bit indexing which meet the target False Positive Probability within the memory
+ * budget, and minimize the expected probes per query:
+ * </p>
+ * <pre>
+ *     hit query:  k probes
+ *     miss query: 1 + f + f^2 + ... + f^(k-1) probes, f = 1 - e^(-kn/m) is the fraction of bits set
+ *     probe cost: indexing cost + CACHE_MISS_COST * m / (m + C1) + MEMORY_ACCESS_COST * m / (m + C2)
+ * </pre>
+ * The indexing cost is 1 for MASK, MULTIPLY_SHIFT_PROBE_COST for MULTIPLY_SHIFT and MODULO_PROBE_COST for
+ * MODULO. m / (m + C) approximates the chance that a probe misses a cache of C bits, C1 is the private cache and
+ * C2 the last level cache. As the bit size grows the probes get more expensive, so a larger Bloom Filter with
+ * fewer hash functions pays off for hit queries, and a smaller one for miss queries, which stop at the first zero
+ * bit. When the target cannot be met within the memory budget, the whole budget is used with the optimal number
+ * of hash functions, check the chosen trade-off by plan() before build().
+ */
+public class BloomFilterBuilder {
+    /** The relative cost of a probe with MODULO bit indexing, the 64-bit division is slower than the hash. */
+    public static final double MODULO_PROBE_COST = 1.5;
+
+    /** The relative cost of a probe with MULTIPLY_SHIFT bit indexing, a multiplication more than MASK. */
+    public static final double MULTIPLY_SHIFT_PROBE_COST = 1.1;
+
+    /** The relative cost of a private cache miss served by the last level cache, to the calculation of a probe. */
+    public static final double CACHE_MISS_COST = 4.0;
+
+    /** The relative cost of a last level cache miss, i.e. a memory access, to the calculation of a probe. */
+    public static final double MEMORY_ACCESS_COST = 20.0;
+
+    /** The default private cache size the Bloom Filter competes for, in bits, i.e. 1MB of L2 cache. */
+    public static final long DEFAULT_CACHE_BIT_SIZE = 8L * 1024 * 1024;
+
+    /** The default last level cache size the Bloom Filter competes for, in bits, i.e. 32MB of L3 cache. */
+    public static final long DEFAULT_LAST_LEVEL_CACHE_BIT_SIZE = 8L * 32 * 1024 * 1024;
+
+    /** Configurations with relative cost difference below this are taken as equal, and the smaller one wins. */
+    public static final double COST_TOLERANCE = 0.01;
+
+    /** The default memory budget, relative to the bit size from the textbook formula. */
+    public static final double DEFAULT_BUDGET_FACTOR = 2.0;
+
+    /* The expected maximum number of elements, i.e. the "n" in Bloom Filter formula */
+    private long elemNum = -1;
+
+    /* The target False Positive Probability. */
+    private double errorRate = -1.0;
+
+    /* The maximum number of bits, or non-positive for the default. */
+    private long maxBitSize = -1;
+
+    /* The fraction of queries for elements which have been added. */
+    private double hitRatio = 0.5;
+
+    /* The private and last level cache sizes the Bloom Filter competes for, in bits. */
+    private long cacheBitSize = DEFAULT_CACHE_BIT_SIZE;
+    private long lastLevelCacheBitSize = DEFAULT_LAST_LEVEL_CACHE_BIT_SIZE;
+
+    /**
+     * Set the expected maximum number of elements to be added.
+     * @param elemNum the expected maximum number of elements.
+     * @return this builder.
+     */
+    public BloomFilterBuilder elemNum(long elemNum) {
+        this.elemNum = elemNum;
+        return this;
+    }
+
+    /**
+     * Set the target False Positive Probability.
+     * @param errorRate the target False Positive Probability.
+     * @return this builder.
+     */
+    public BloomFilterBuilder errorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Set the memory budget, the default is DEFAULT_BUDGET_FACTOR times the bit size from the textbook formula.
+     * @param maxBitSize the maximum number of bits.
+     * @return this builder.
+     */
+    public BloomFilterBuilder maxBitSize(long maxBitSize) {
+        this.maxBitSize = maxBitSize;
+        return this;
+    }
+
+    /**
+     * Set the fraction of queries for elements which have been added, the default is 0.5.
+     * The more misses, the more a sparse Bloom Filter pays off, since a miss query stops at the first zero bit.
+     * @param hitRatio the fraction of hit queries, in [0, 1].
+     * @return this builder.
+     */
+    public BloomFilterBuilder hitRatio(double hitRatio) {
+        this.hitRatio = hitRatio;
+        return this;
+    }
+
+    /**
+     * Set the private cache size the Bloom Filter competes for, the default is DEFAULT_CACHE_BIT_SIZE.
+     * @param cacheBitSize the cache size in bits.
+     * @return this builder.
+     */
+    public BloomFilterBuilder cacheBitSize(long cacheBitSize) {
+        this.cacheBitSize = cacheBitSize;
+        return this;
+    }
+
+    /**
+     * Set the last level cache size the Bloom Filter competes for, the default is
+     * DEFAULT_LAST_LEVEL_CACHE_BIT_SIZE.
+     * @param lastLevelCacheBitSize the cache size in bits.
+     * @return this builder.
+     */
+    public BloomFilterBuilder lastLevelCacheBitSize(long lastLevelCacheBitSize) {
+        this.lastLevelCacheBitSize = lastLevelCacheBitSize;
+        return this;
+    }
+
+    /**
+     * Choose the configuration without building the Bloom Filter.
+     * @return the chosen configuration.
+     * @throws IllegalArgumentException when some arguments invalid
+     */
+    public Plan plan()
+            throws IllegalArgumentException {
+        /* Sanity check of the arguments. */
+        if (elemNum <= 0) {
+            throw new IllegalArgumentException("Invalid maximum number of elements: " + elemNum);
+        }
+
+        if ((errorRate < 0.00000000001) || (errorRate > 1.0)) {
+            throw new IllegalArgumentException("Invalid false positive probability: " + errorRate);
+        }
+
+        if (maxBitSize > SimpleBloomFilter.MAX_BIT_SIZE) {
+            throw new IllegalArgumentException("Invalid bit size: " + maxBitSize
+                    + ", should within (0, " + SimpleBloomFilter.MAX_BIT_SIZE + "]");
+        }
+
+        if ((hitRatio < 0.0) || (hitRatio > 1.0)) {
+            throw new IllegalArgumentException("Invalid hit ratio: " + hitRatio);
+        }
+
+        if ((cacheBitSize <= 0) || (lastLevelCacheBitSize <= 0)) {
+            throw new IllegalArgumentException("Invalid cache size: " + cacheBitSize + ", " + lastLevelCacheBitSize);
+        }
+
+        long budget = maxBitSize;
+        if (budget <= 0) {
+            double defaultBudget = SimpleBloomFilter.calcBitSize(elemNum, errorRate) * DEFAULT_BUDGET_FACTOR;
+            budget = (defaultBudget < SimpleBloomFilter.MAX_BIT_SIZE)
+                    ? (long) defaultBudget : SimpleBloomFilter.MAX_BIT_SIZE;
+            /* a False Positive Probability close to 1 needs no bit, but a Bloom Filter has at least one */
+            budget = Math.max(1, budget);
+        }
+
+        Plan best = null;
+        for (int hashNum = 1; hashNum <= SimpleBloomFilter.MAX_HASH_NUM; hashNum++) {
+            long bitSize = calcBitSize(elemNum, errorRate, hashNum);
+            if ((bitSize <= 0) || (bitSize > budget)) {
+                continue;
+            }
+
+            long pow2BitSize = Long.highestOneBit(bitSize);
+            if (pow2BitSize < bitSize) {
+                pow2BitSize <<= 1;
+            }
+            if ((pow2BitSize <= budget) && BitIndexing.MASK.supports(pow2BitSize)) {
+                best = better(best, newPlan(pow2BitSize, hashNum, BitIndexing.MASK));
+            }
+            best = better(best, newPlan(bitSize, hashNum, fastestIndexing(bitSize)));
+        }
+
+        if (best == null) {
+            /* the target is out of the budget, spend all the budget for the lowest False Positive Probability. */
+            int hashNum = SimpleBloomFilter.calcHashNum(elemNum, budget);
+            hashNum = Math.max(1, Math.min(hashNum, SimpleBloomFilter.MAX_HASH_NUM));
+            best = newPlan(budget, hashNum, fastestIndexing(budget));
+        }
+
+        return best;
+    }
+
+    /**
+     * Build a empty Bloom Filter of the chosen configuration.
+     * @param <T> type of the elements
+     * @return the Bloom Filter.
+     * @throws IllegalArgumentException when some arguments invalid
+     */
+    public <T> SimpleBloomFilter<T> build()
+            throws IllegalArgumentException {
+        return build(null);
+    }
+
+    /**
+     * Build a empty Bloom Filter of the chosen configuration, which hashes the objects by a Funnel.
+     * @param funnel Stream the objects into key bytes, or null to use their toString().
+     * @param <T>    type of the elements
+     * @return the Bloom Filter.
+     * @throws IllegalArgumentException when some arguments invalid
+     */
+    public <T> SimpleBloomFilter<T> build(Funnel<? super T> funnel)
+            throws IllegalArgumentException {
+        Plan plan = plan();
+        return new SimpleBloomFilter<T>(plan.getElemNum(), plan.getBitSize(), plan.getHashNum(),
+                plan.getBitIndexing(), funnel);
+    }
+
+    /**
+     * Calculate the minimal bit size to reach a False Positive Probability with given number of hash functions,
+     * i.e. solve errorRate = (1 - e^(-kn/m))^k for m.
+     * @param elemNum   The number of elements to be added into this Bloom Filter.
+     * @param errorRate False Positive Probability.
+     * @param hashNum   The number of hash functions.
+     * @return the number bits, or -1 if it is larger than SimpleBloomFilter.MAX_BIT_SIZE.
+     */
+    public static long calcBitSize(long elemNum, double errorRate, int hashNum) {
+        double fillRatio = Math.exp(Math.log(errorRate) / hashNum);
+        double bitSize = Math.ceil(-hashNum * (double) elemNum / Math.log(1 - fillRatio));
+        if (Double.isNaN(bitSize) || (bitSize > SimpleBloomFilter.MAX_BIT_SIZE)) {
+            return -1;
+        }
+        return (long) bitSize;
+    }
+
+    /**
+     * Estimate a configuration for the workload of this builder.
+     * @param bitSize     the number bits.
+     * @param hashNum     the number of hash functions.
+     * @param bitIndexing the bit indexing.
+     * @return the configuration and its expected trade-off.
+     */
+    private Plan newPlan(long bitSize, int hashNum, BitIndexing bitIndexing) {
+        return new Plan(elemNum, bitSize, hashNum, bitIndexing, hitRatio, cacheBitSize, lastLevelCacheBitSize);
+    }
+
+    /**
+     * Get the fastest bit indexing without changing the bit size.
+     * @param bitSize the number bits.
+     * @return the bit indexing.
+     */
+    private static BitIndexing fastestIndexing(long bitSize) {
+        if (BitIndexing.MASK.supports(bitSize)) {
+            return BitIndexing.MASK;
+        }
+        if (BitIndexing.MULTIPLY_SHIFT.supports(bitSize)) {
+            return BitIndexing.MULTIPLY_SHIFT;
+        }
+        return BitIndexing.MODULO;
+    }
+
+    /**
+     * Pick the better of two configurations, the cheaper one, or the smaller one if their costs are close.
+     * @param best      the best configuration so far, may be null.
+     * @param candidate the configuration to compare.
+     * @return the better one.
+     */
+    private static Plan better(Plan best, Plan candidate) {
+        if (best == null) {
+            return candidate;
+        }
+
+        double diff = candidate.getExpectProbeCost() - best.getExpectProbeCost();
+        if (Math.abs(diff) <= COST_TOLERANCE * best.getExpectProbeCost()) {
+            return (candidate.getBitSize() < best.getBitSize()) ? candidate : best;
+        }
+        return (diff < 0) ? candidate : best;
+    }
+
+    /**
+     * A configuration chosen by the builder, and its expected trade-off.
+     */
+    public static final class Plan {
+        private final long elemNum;
+        private final long bitSize;
+        private final int hashNum;
+        private final BitIndexing bitIndexing;
+        private final double errorRate;
+        private final double missProbeNum;
+        private final double expectProbeCost;
+
+        Plan(long elemNum, long bitSize, int hashNum, BitIndexing bitIndexing, double hitRatio,
+             long cacheBitSize, long lastLevelCacheBitSize) {
+            this.elemNum     = elemNum;
+            this.bitSize     = bitSize;
+            this.hashNum     = hashNum;
+            this.bitIndexing = bitIndexing;
+            this.errorRate   = SimpleBloomFilter.calcErrorRate(elemNum, bitSize, hashNum);
+
+            double fillRatio = 1 - Math.exp(-hashNum * (double) elemNum / bitSize);
+            this.missProbeNum = (fillRatio < 1.0)
+                    ? (1 - Math.pow(fillRatio, hashNum)) / (1 - fillRatio) : hashNum;
+
+            double probeCost;
+            switch (bitIndexing) {
+                case MASK:
+                    probeCost = 1.0;
+                    break;
+                case MULTIPLY_SHIFT:
+                    probeCost = MULTIPLY_SHIFT_PROBE_COST;
+                    break;
+                default:
+                    probeCost = MODULO_PROBE_COST;
+                    break;
+            }
+            probeCost += CACHE_MISS_COST * bitSize / ((double) bitSize + cacheBitSize)
+                    + MEMORY_ACCESS_COST * bitSize / ((double) bitSize + lastLevelCacheBitSize);
+            this.expectProbeCost = (hitRatio * hashNum + (1 - hitRatio) * missProbeNum) * probeCost;
+        }
+
+        /**
+         * Get the expect maximum number of elements.
+         * @return the expect maximum number of elements.
+         */
+        public long getElemNum() {
+            return elemNum;
+        }
+
+        /**
+         * Get the chosen bit size.
+         * @return the bit size.
+         */
+        public long getBitSize() {
+            return bitSize;
+        }
+
+        /**
+         * Get the chosen number of hash functions.
+         * @return the number of hash functions.
+         */
+        public int getHashNum() {
+            return hashNum;
+        }
+
+        /**
+         * Get the chosen bit indexing.
+         * @return the bit indexing.
+         */
+        public BitIndexing getBitIndexing() {
+            return bitIndexing;
+        }
+
+        /**
+         * Get the expected False Positive Probability when the Bloom Filter is full, it may be larger than the
+         * target if the memory budget is too small.
+         * @return the expected False Positive Probability.
+         */
+        public double getExpectErrorRate() {
+            return errorRate;
+        }
+
+        /**
+         * Get the expected number of probes for a element which has not been added, when the Bloom Filter is full.
+         * @return the expected number of probes of a miss query.
+         */
+        public double getMissProbeNum() {
+            return missProbeNum;
+        }
+
+        /**
+         * Get the expected cost per query, in units of the calculation of a MASK probe.
+         * @return the expected cost per query.
+         */
+        public double getExpectProbeCost() {
+            return expectProbeCost;
+        }
+
+        @Override
+        public String toString() {
+            return "Plan{elemNum=" + elemNum + ", bitSize=" + bitSize + ", hashNum=" + hashNum
+                    + ", bitIndexing=" + bitIndexing + ", errorRate=" + errorRate
+                    + ", missProbeNum=" + missProbeNum + ", expectProbeCost=" + expectProbeCost + "}";
+        }
+    }
+}
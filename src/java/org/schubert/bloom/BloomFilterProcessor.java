@@ -0,0 +1,177 @@
+/*
+ *           DO WHAT THE FUCK YOU WANT TO PUBLIC LICENSE
+ * Everyone is permitted to copy and distribute verbatim or modified
+ * copies of this license document, and changing it is allowed as long
+ * as the name is changed. You just DO WHAT THE FUCK YOU WANT TO.
+ *                http://www.wtfpl.net/txt/copying/
+ */
+
+package org.schubert.bloom;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * A Flow.Processor for reactive pipelines, which filters the elements by a Bloom Filter.
+ * <p>
+ * The received elements are buffered into micro-batches, and each batch is probed against the Bloom Filter
+ * holding its lock only once, so the Bloom Filter can be shared with other threads at low cost.
+ * The passed elements are published downstream in the original order. A batch is probed when it is full,
+ * when the upstream completes or fails, or when flush() is called.
+ * </p>
+ * @param <T> type of the elements
+ */
+public class BloomFilterProcessor<T> extends SubmissionPublisher<T> implements Flow.Processor<T, T> {
+    /** The default number of elements in a micro-batch. */
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    /** How to filter the elements. */
+    public enum Mode {
+        /** Pass the elements that may have been added into the Bloom Filter. */
+        MIGHT_CONTAIN,
+        /** Pass the elements at their first occurrence, and add them into the Bloom Filter. */
+        DISTINCT
+    }
+
+    /* The Bloom Filter to probe, it is also the lock when probing. */
+    private final BloomFilter<T> bloom;
+
+    /* How to filter the elements. */
+    private final Mode mode;
+
+    /* The current micro-batch, and number of elements in it. The elements requested from upstream but not
+       received yet are always batch.length - batchNum, each drained element is requested again. */
+    private final Object[] batch;
+    private int batchNum = 0;
+
+    /* The upstream subscription. */
+    private Flow.Subscription subscription;
+
+    /**
+     * Construct a processor with given micro-batch size.
+     * @param bloom     the Bloom Filter to probe.
+     * @param mode      how to filter the elements.
+     * @param batchSize the number of elements in a micro-batch.
+     * @throws IllegalArgumentException when some arguments invalid
+     */
+    public BloomFilterProcessor(BloomFilter<T> bloom, Mode mode, int batchSize)
+            throws IllegalArgumentException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+        }
+
+        this.bloom = bloom;
+        this.mode  = mode;
+        this.batch = new Object[batchSize];
+    }
+
+    /**
+     * Construct a processor with the default micro-batch size.
+     * @param bloom the Bloom Filter to probe.
+     * @param mode  how to filter the elements.
+     */
+    public BloomFilterProcessor(BloomFilter<T> bloom, Mode mode) {
+        this(bloom, mode, DEFAULT_BATCH_SIZE);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (this.subscription != null) {
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        subscription.request(batch.length);
+    }
+
+    @Override
+    public synchronized void onNext(T item) {
+        batch[batchNum++] = item;
+        if (batchNum == batch.length) {
+            flush();
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        synchronized (this) {
+            drain();
+        }
+        closeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        synchronized (this) {
+            drain();
+        }
+        close();
+    }
+
+    /**
+     * Probe the buffered elements and publish the passed ones, without waiting for the batch to be full.
+     * As many elements as drained are requested from upstream again.
+     */
+    public synchronized void flush() {
+        int drainNum = drain();
+        if ((drainNum > 0) && (subscription != null)) {
+            subscription.request(drainNum);
+        }
+    }
+
+    /**
+     * Probe the buffered elements and publish the passed ones, the caller must hold the lock of this processor.
+     * @return the number of drained elements.
+     */
+    @SuppressWarnings("unchecked")
+    private int drain() {
+        int drainNum = batchNum;
+        if (drainNum == 0) {
+            return 0;
+        }
+
+        /* compact the passed elements to the head of the batch */
+        int passNum = 0;
+        synchronized (bloom) {
+            for (int i = 0; i < batchNum; i++) {
+                T elem = (T) batch[i];
+                if (probe(elem)) {
+                    batch[passNum++] = elem;
+                }
+            }
+        }
+
+        for (int i = 0; i < passNum; i++) {
+            submit((T) batch[i]);
+        }
+
+        for (int i = 0; i < batchNum; i++) {
+            batch[i] = null;
+        }
+        batchNum = 0;
+        return drainNum;
+    }
+
+    /**
+     * Check whether a element should be passed, the caller must hold the lock of the Bloom Filter.
+     * @param elem the element object
+     * @return true if the element should be passed.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean probe(T elem) {
+        if (mode == Mode.MIGHT_CONTAIN) {
+            return bloom.mayContain(elem);
+        }
+
+        /* hash the element once to check and add it */
+        if (bloom instanceof SimpleBloomFilter) {
+            return ((SimpleBloomFilter<T>) bloom).addElemIfAbsent(elem);
+        }
+
+        if (bloom.mayContain(elem)) {
+            return false;
+        }
+        bloom.addElem(elem);
+        return true;
+    }
+}
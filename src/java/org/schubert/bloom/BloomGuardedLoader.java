@@ -0,0 +1,315 @@
+/*
+ *           DO WHAT THE FUCK YOU WANT TO PUBLIC LICENSE
+ * Everyone is permitted to copy and distribute verbatim or modified
+ * copies of this license document, and changing it is allowed as long
+ * as the name is changed. You just DO WHAT THE FUCK YOU WANT TO.
+ *                http://www.wtfpl.net/txt/copying/
+ */
+
+package org.schubert.bloom;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * A loader guarded by a Bloom Filter, which short-circuits the lookups of keys that definitely don't exist,
+ * so they never reach the slow backing store (disk or remote KV).
+ * <p>
+ * Every key written into the backing store must be recorded by recordWrite() before it becomes visible there,
+ * otherwise a concurrent load() may miss it. A key which passes the Bloom Filter but is not found by the loader
+ * (the loader returns null) is counted as a false positive hit, so the observed False Positive Probability can
+ * be compared with the expected one of the Bloom Filter to size it.
+ * </p>
+ * <p>
+ * The asynchronous lookups run on the given Executor. The lookups are usually blocking I/O, so give a thread per
+ * task executor, e.g. Executors.newVirtualThreadPerTaskExecutor() on JDK 21 or later, or a cached thread pool,
+ * not the common ForkJoinPool which is sized for CPU-bound tasks. The keys rejected by the Bloom Filter are
+ * answered at once, without submitting any task.
+ * </p>
+ * This class is thread-safe. The lookups probe the Bloom Filter under a shared read lock, so they don't block each
+ * other, and recordWrite() takes the write lock. The Bloom Filter must be updated only through recordWrite().
+ * @param <K> type of the keys
+ * @param <V> type of the values
+ */
+public class BloomGuardedLoader<K, V> {
+    /* The Bloom Filter of all the keys in the backing store. */
+    private final BloomFilter<K> bloom;
+
+    /* Shared by the probes, exclusive for the updates of the Bloom Filter. */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /* Load one value from the backing store, returns null if not found. */
+    private final Function<? super K, ? extends V> loader;
+
+    /* Load values of a batch of keys from the backing store, the keys not found are absent from the result. */
+    private final Function<? super Collection<K>, ? extends Map<K, V>> batchLoader;
+
+    /* Run the asynchronous lookups. */
+    private final Executor executor;
+
+    /* Statistics. */
+    private final LongAdder loadNum = new LongAdder();
+    private final LongAdder avoidedNum = new LongAdder();
+    private final LongAdder falsePositiveNum = new LongAdder();
+
+    /**
+     * Construct a loader guarded by a Bloom Filter.
+     * @param bloom       the Bloom Filter of all the keys in the backing store.
+     * @param loader      load one value from the backing store, returns null if not found.
+     * @param batchLoader load values of a batch of keys, the keys not found should be absent from the result.
+     *                    It may be null, then the batch is loaded key by key.
+     * @param executor    run the asynchronous lookups.
+     * @throws IllegalArgumentException when some arguments invalid
+     */
+    public BloomGuardedLoader(BloomFilter<K> bloom, Function<? super K, ? extends V> loader,
+                              Function<? super Collection<K>, ? extends Map<K, V>> batchLoader,
+                              Executor executor)
+            throws IllegalArgumentException {
+        if ((bloom == null) || (loader == null) || (executor == null)) {
+            throw new IllegalArgumentException("Bloom Filter, loader and executor must not be null");
+        }
+
+        this.bloom       = bloom;
+        this.loader      = loader;
+        this.batchLoader = batchLoader;
+        this.executor    = executor;
+    }
+
+    /**
+     * Construct a loader guarded by a Bloom Filter, which loads the batches key by key.
+     * @param bloom    the Bloom Filter of all the keys in the backing store.
+     * @param loader   load one value from the backing store, returns null if not found.
+     * @param executor run the asynchronous lookups.
+     * @throws IllegalArgumentException when some arguments invalid
+     */
+    public BloomGuardedLoader(BloomFilter<K> bloom, Function<? super K, ? extends V> loader, Executor executor)
+            throws IllegalArgumentException {
+        this(bloom, loader, null, executor);
+    }
+
+    /**
+     * Get the Bloom Filter guarding the loader.
+     * @return the Bloom Filter.
+     */
+    public BloomFilter<K> getBloomFilter() {
+        return bloom;
+    }
+
+    /**
+     * Record a key written into the backing store, it must be called before the key is visible there.
+     * @param key the key
+     */
+    public void recordWrite(K key) {
+        lock.writeLock().lock();
+        try {
+            bloom.addElem(key);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Check whether the key may exist in the backing store.
+     * @param key the key
+     * @return false if the key definitely doesn't exist.
+     */
+    public boolean mayContain(K key) {
+        lock.readLock().lock();
+        try {
+            return bloom.mayContain(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Load the value of a key, the backing store is not touched if the key definitely doesn't exist.
+     * @param key the key
+     * @return the value, or null if not found.
+     */
+    public V load(K key) {
+        if (!mayContain(key)) {
+            avoidedNum.increment();
+            return null;
+        }
+        return loadPassed(key);
+    }
+
+    /**
+     * Load the value of a key asynchronously.
+     * @param key the key
+     * @return the future of the value, which completes with null if not found.
+     */
+    public CompletableFuture<V> loadAsync(final K key) {
+        if (!mayContain(key)) {
+            avoidedNum.increment();
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.supplyAsync(() -> loadPassed(key), executor);
+    }
+
+    /**
+     * Load the values of a batch of keys, only the keys passing the Bloom Filter are looked up, in one batch if
+     * there is a batch loader.
+     * @param keys the keys
+     * @return the values of the keys found.
+     */
+    public Map<K, V> loadAll(Collection<? extends K> keys) {
+        List<K> passed = filter(keys);
+        if (passed.isEmpty()) {
+            return new HashMap<K, V>();
+        }
+        return loadAllPassed(passed);
+    }
+
+    /**
+     * Load the values of a batch of keys asynchronously. If there is no batch loader, each key passing the
+     * Bloom Filter is looked up in its own task.
+     * @param keys the keys
+     * @return the future of the values of the keys found.
+     */
+    public CompletableFuture<Map<K, V>> loadAllAsync(Collection<? extends K> keys) {
+        final List<K> passed = filter(keys);
+        if (passed.isEmpty()) {
+            return CompletableFuture.completedFuture(new HashMap<K, V>());
+        }
+
+        if (batchLoader != null) {
+            return CompletableFuture.supplyAsync(() -> loadAllPassed(passed), executor);
+        }
+
+        final List<CompletableFuture<V>> futures = new ArrayList<CompletableFuture<V>>(passed.size());
+        for (final K key : passed) {
+            futures.add(CompletableFuture.supplyAsync(() -> loadPassed(key), executor));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            Map<K, V> values = new HashMap<K, V>();
+            for (int i = 0; i < passed.size(); i++) {
+                V value = futures.get(i).join();
+                if (value != null) {
+                    values.put(passed.get(i), value);
+                }
+            }
+            return values;
+        });
+    }
+
+    /**
+     * Get the number of lookups reaching the backing store.
+     * @return the number of lookups reaching the backing store.
+     */
+    public long getLoadNum() {
+        return loadNum.sum();
+    }
+
+    /**
+     * Get the number of lookups avoided by the Bloom Filter.
+     * @return the number of lookups avoided by the Bloom Filter.
+     */
+    public long getAvoidedNum() {
+        return avoidedNum.sum();
+    }
+
+    /**
+     * Get the number of lookups which passed the Bloom Filter but found nothing.
+     * @return the number of false positive hits.
+     */
+    public long getFalsePositiveNum() {
+        return falsePositiveNum.sum();
+    }
+
+    /**
+     * Get the observed False Positive Probability, i.e. the fraction of the absent keys which passed
+     * the Bloom Filter. Compare it with getBloomFilter().getExpectErrorRate() to size the Bloom Filter.
+     * @return the observed False Positive Probability, or 0 if no absent key has been looked up.
+     */
+    public double getObservedErrorRate() {
+        long falsePositive = falsePositiveNum.sum();
+        long absent = falsePositive + avoidedNum.sum();
+        return (absent == 0) ? 0.0 : (double) falsePositive / absent;
+    }
+
+    /**
+     * Reset all the statistics to zero.
+     */
+    public void resetStats() {
+        loadNum.reset();
+        avoidedNum.reset();
+        falsePositiveNum.reset();
+    }
+
+    /**
+     * Probe a batch of keys taking the read lock only once.
+     * @param keys the keys
+     * @return the keys passing the Bloom Filter.
+     */
+    private List<K> filter(Collection<? extends K> keys) {
+        List<K> passed = new ArrayList<K>(keys.size());
+        lock.readLock().lock();
+        try {
+            for (K key : keys) {
+                if (bloom.mayContain(key)) {
+                    passed.add(key);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        avoidedNum.add(keys.size() - passed.size());
+        return passed;
+    }
+
+    /**
+     * Look up a key passing the Bloom Filter in the backing store.
+     * @param key the key
+     * @return the value, or null if not found.
+     */
+    private V loadPassed(K key) {
+        loadNum.increment();
+        V value = loader.apply(key);
+        if (value == null) {
+            falsePositiveNum.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Look up a batch of keys passing the Bloom Filter in the backing store.
+     * @param keys the keys
+     * @return the values of the keys found.
+     */
+    private Map<K, V> loadAllPassed(List<K> keys) {
+        Map<K, V> values = new HashMap<K, V>();
+        if (batchLoader == null) {
+            for (K key : keys) {
+                V value = loadPassed(key);
+                if (value != null) {
+                    values.put(key, value);
+                }
+            }
+            return values;
+        }
+
+        loadNum.add(keys.size());
+        Map<K, V> found = batchLoader.apply(keys);
+        for (K key : keys) {
+            V value = found.get(key);
+            if (value != null) {
+                values.put(key, value);
+            } else {
+                falsePositiveNum.increment();
+            }
+        }
+        return values;
+    }
+}
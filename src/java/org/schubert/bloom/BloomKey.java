@@ -0,0 +1,127 @@
+/*
+ *           DO WHAT THE FUCK YOU WANT TO PUBLIC LICENSE
+ * Everyone is permitted to copy and distribute verbatim or modified
+ * copies of this license document, and changing it is allowed as long
+ * as the name is changed. You just DO WHAT THE FUCK YOU WANT TO.
+ *                http://www.wtfpl.net/txt/copying/
+ */
+
+package org.schubert.bloom;
+
+/**
+ * A reusable holder of a key and its hash values, so a key checked against several Bloom Filters of this package
+ * (LSM levels, replicas, time generations) is hashed once per key, not once per filter.
+ * <p>
+ * The hash values are calculated lazily and cached, a Bloom Filter with k hash functions uses the first k of them,
+ * so Bloom Filters of different bit sizes and numbers of hash functions can share a BloomKey. The key bytes are
+ * referenced, not copied, they must not be modified until the BloomKey is reset to another key.
+ * A BloomKey allocates nothing after construction, reuse one per thread for the hot paths.
+ * </p>
+ * This class is not thread-safe.
+ */
+public final class BloomKey {
+    /* The cached hash values, the i-th is calculated with seed i. */
+    private final long[] hashValues = new long[SimpleBloomFilter.MAX_HASH_NUM];
+
+    /* The number of the cached hash values. */
+    private int hashedNum = 0;
+
+    /* Collects the key bytes streamed by a Funnel, created at the first use. */
+    private ByteKeySink sink;
+
+    /* The key bytes. */
+    private byte[] key;
+    private int offset;
+    private int length;
+
+    /**
+     * Construct a empty holder, reset() it to a key before use.
+     */
+    public BloomKey() {
+    }
+
+    /**
+     * Construct a holder of a key.
+     * @param key the bytes array of element key
+     */
+    public BloomKey(byte[] key) {
+        reset(key, 0, key.length);
+    }
+
+    /**
+     * Hold another key, the cached hash values are dropped.
+     * @param key    the bytes array of element key
+     * @param offset the begin offset of the element key
+     * @param length the valid length of the element key
+     * @return this holder.
+     */
+    public BloomKey reset(byte[] key, int offset, int length) {
+        this.key       = key;
+        this.offset    = offset;
+        this.length    = length;
+        this.hashedNum = 0;
+        return this;
+    }
+
+    /**
+     * Hold another key, the cached hash values are dropped.
+     * @param key the bytes array of element key
+     * @return this holder.
+     */
+    public BloomKey reset(byte[] key) {
+        return reset(key, 0, key.length);
+    }
+
+    /**
+     * Hold the key bytes streamed by a Funnel, the cached hash values are dropped. The key bytes are collected
+     * into a buffer owned by this holder, so it allocates nothing unless the buffer grows.
+     * @param elem   the element object
+     * @param funnel stream the object into key bytes.
+     * @param <T>    type of the object
+     * @return this holder.
+     */
+    public <T> BloomKey reset(T elem, Funnel<? super T> funnel) {
+        if (sink == null) {
+            sink = new ByteKeySink();
+        }
+        sink.funnel(elem, funnel);
+        return reset(sink.getBytes(), 0, sink.getLength());
+    }
+
+    /**
+     * Get the bytes array holding the key.
+     * @return the bytes array.
+     */
+    byte[] getKey() {
+        return key;
+    }
+
+    /**
+     * Get the begin offset of the key in the bytes array.
+     * @return the begin offset.
+     */
+    int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Get the length of the key.
+     * @return the valid length.
+     */
+    int getLength() {
+        return length;
+    }
+
+    /**
+     * Get the i-th hash value of the key, it is calculated at the first call.
+     * @param index the index of the hash function, in [0, SimpleBloomFilter.MAX_HASH_NUM).
+     * @return the hash value.
+     */
+    public long getHashValue(int index) {
+        while (hashedNum <= index) {
+            hashValues[hashedNum] = SimpleBloomFilter.getHashValue(key, offset, length, hashedNum);
+            hashedNum++;
+        }
+        return hashValues[index];
+    }
+}
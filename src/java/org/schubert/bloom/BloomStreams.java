@@ -0,0 +1,150 @@
+/*
+ *           DO WHAT THE FUCK YOU WANT TO PUBLIC LICENSE
+ * Everyone is permitted to copy and distribute verbatim or modified
+ * copies of this license document, and changing it is allowed as long
+ * as the name is changed. You just DO WHAT THE FUCK YOU WANT TO.
+ *                http://www.wtfpl.net/txt/copying/
+ */
+
+package org.schubert.bloom;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+
+/**
+ * Ready-made java.util.stream pipeline stages built on Bloom Filter.
+ * <p>
+ * toBloomFilter() builds a Bloom Filter from a (possibly parallel) stream, each worker thread fills its own filter
+ * without any locking, and the per-thread filters are merged at the end. distinctApprox() and
+ * mightContainFilter() are predicates to be used in Stream.filter().
+ * </p>
+ */
+public final class BloomStreams {
+    /* The number of locks of a distinctApprox() Predicate, a power of two. */
+    private static final int DISTINCT_LOCK_NUM = 64;
+
+    private BloomStreams() {
+    }
+
+    /**
+     * Return a Collector which adds all the stream elements into a new Bloom Filter. It is a concurrent
+     * Collector, so a parallel stream allocates one Bloom Filter per worker thread, not one per split, and
+     * merges them into the first one at the end.
+     * @param supplier supplies empty Bloom Filters of the same shape, it is called once per worker thread.
+     * @param <T>      type of the elements
+     * @return the Collector.
+     */
+    public static <T> Collector<T, ?, SimpleBloomFilter<T>> toBloomFilter(Supplier<SimpleBloomFilter<T>> supplier) {
+        return Collector.of(
+                () -> new PerThreadFilters<T>(supplier),
+                PerThreadFilters::addElem,
+                (left, right) -> {
+                    left.filters.putAll(right.filters);
+                    return left;
+                },
+                PerThreadFilters::merge,
+                Collector.Characteristics.CONCURRENT,
+                Collector.Characteristics.UNORDERED);
+    }
+
+    /**
+     * Return a Collector which adds all the stream elements into a new Bloom Filter.
+     * @param elemNum   The expected number of elements to be added into the Bloom Filter.
+     * @param errorRate Expected False Positive Probability.
+     * @param <T>       type of the elements
+     * @return the Collector.
+     */
+    public static <T> Collector<T, ?, SimpleBloomFilter<T>> toBloomFilter(long elemNum, double errorRate) {
+        return toBloomFilter(() -> new SimpleBloomFilter<T>(elemNum, errorRate));
+    }
+
+    /**
+     * Return a stateful Predicate which passes an element only at its first occurrence, i.e. an approximate
+     * Stream.distinct() which needs no HashSet. With False Positive Probability, a new element may be
+     * taken as duplicated and dropped, but a duplicated element is never passed.
+     * <p>
+     * The Predicate is thread-safe, and the bits are set by atomic operations without locking the Bloom Filter,
+     * see SimpleBloomFilter.addElemIfAbsentConcurrently(). Only the occurrences of equal elements are serialized,
+     * by one of 64 locks chosen by hashCode(), so a parallel stream is not funneled through
+     * a single lock. The Bloom Filter must not be modified by others meanwhile.
+     * </p>
+     * @param bloom the Bloom Filter to remember the seen elements.
+     * @param <T>   type of the elements
+     * @return the Predicate.
+     */
+    public static <T> Predicate<T> distinctApprox(SimpleBloomFilter<T> bloom) {
+        final Object[] locks = new Object[DISTINCT_LOCK_NUM];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+
+        return elem -> {
+            int h = elem.hashCode();
+            synchronized (locks[(h ^ (h >>> 16)) & (DISTINCT_LOCK_NUM - 1)]) {
+                return bloom.addElemIfAbsentConcurrently(elem);
+            }
+        };
+    }
+
+    /**
+     * Return a stateful Predicate which passes an element only at its first occurrence.
+     * @param elemNum   The expected number of distinct elements.
+     * @param errorRate Expected False Positive Probability, i.e. the probability to drop a new element.
+     * @param <T>       type of the elements
+     * @return the Predicate.
+     * @throws IllegalArgumentException when some arguments invalid
+     */
+    public static <T> Predicate<T> distinctApprox(long elemNum, double errorRate)
+            throws IllegalArgumentException {
+        return distinctApprox(new SimpleBloomFilter<T>(elemNum, errorRate));
+    }
+
+    /**
+     * Return a Predicate which passes the elements that may have been added into the Bloom Filter,
+     * i.e. drops the elements which are definitely not in set. The Bloom Filter is only read, so the
+     * Predicate can be used in parallel stream as long as no one adds elements at the same time.
+     * @param bloom the Bloom Filter to probe.
+     * @param <T>   type of the elements
+     * @return the Predicate.
+     */
+    public static <T> Predicate<T> mightContainFilter(BloomFilter<T> bloom) {
+        return elem -> bloom.mayContain(elem);
+    }
+
+    /**
+     * The Bloom Filters filled by each thread, a thread only touches its own one.
+     * @param <T> type of the elements
+     */
+    private static final class PerThreadFilters<T> {
+        private final Supplier<SimpleBloomFilter<T>> supplier;
+        private final Map<Thread, SimpleBloomFilter<T>> filters = new ConcurrentHashMap<Thread, SimpleBloomFilter<T>>();
+
+        PerThreadFilters(Supplier<SimpleBloomFilter<T>> supplier) {
+            this.supplier = supplier;
+        }
+
+        void addElem(T elem) {
+            SimpleBloomFilter<T> bloom = filters.get(Thread.currentThread());
+            if (bloom == null) {
+                bloom = supplier.get();
+                filters.put(Thread.currentThread(), bloom);
+            }
+            bloom.addElem(elem);
+        }
+
+        SimpleBloomFilter<T> merge() {
+            SimpleBloomFilter<T> merged = null;
+            for (SimpleBloomFilter<T> bloom : filters.values()) {
+                if (merged == null) {
+                    merged = bloom;
+                } else {
+                    merged.merge(bloom);
+                }
+            }
+            return (merged == null) ? supplier.get() : merged;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *           DO WHAT THE FUCK YOU WANT TO PUBLIC LICENSE
+ * Everyone is permitted to copy and distribute verbatim or modified
+ * copies of this license document, and changing it is allowed as long
+ * as the name is changed. You just DO WHAT THE FUCK YOU WANT TO.
+ *                http://www.wtfpl.net/txt/copying/
+ */
+
+package org.schubert.bloom;
+
+/**
+ * A KeySink which collects the key bytes into a reusable buffer, it only allocates when the buffer grows.
+ * The Murmur hash mixes the key length into its initial state, so the bytes are collected before hashing.
+ */
+final class ByteKeySink implements KeySink {
+    /* The initial size of the buffer, enough for most composite keys. */
+    private static final int INITIAL_SIZE = 64;
+
+    /* One sink per thread for the Bloom Filters, so they can still be probed by several threads. */
+    private static final ThreadLocal<ByteKeySink> SINKS = new ThreadLocal<ByteKeySink>() {
+        @Override
+        protected ByteKeySink initialValue() {
+            return new ByteKeySink();
+        }
+    };
+
+    /* The key bytes. */
+    private byte[] buf = new byte[INITIAL_SIZE];
+    private int length = 0;
+
+    /**
+     * Get the sink of current thread.
+     * @return the sink.
+     */
+    static ByteKeySink get() {
+        return SINKS.get();
+    }
+
+    /**
+     * Stream a object into this sink, after the sink is reset.
+     * @param elem   the object
+     * @param funnel the funnel of the object
+     * @param <T>    type of the object
+     * @return this sink.
+     */
+    <T> ByteKeySink funnel(T elem, Funnel<? super T> funnel) {
+        reset();
+        funnel.funnel(elem, this);
+        return this;
+    }
+
+    /**
+     * Drop the collected bytes.
+     */
+    void reset() {
+        length = 0;
+    }
+
+    /**
+     * Get the buffer, the key bytes are the first getLength() bytes.
+     * @return the buffer.
+     */
+    byte[] getBytes() {
+        return buf;
+    }
+
+    /**
+     * Get the number of the key bytes.
+     * @return the number of the key bytes.
+     */
+    int getLength() {
+        return length;
+    }
+
+    @Override
+    public KeySink putByte(byte b) {
+        ensure(1);
+        buf[length++] = b;
+        return this;
+    }
+
+    @Override
+    public KeySink putBytes(byte[] bytes, int offset, int length) {
+        ensure(length);
+        System.arraycopy(bytes, offset, buf, this.length, length);
+        this.length += length;
+        return this;
+    }
+
+    @Override
+    public KeySink putBytes(byte[] bytes) {
+        return putBytes(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public KeySink putBoolean(boolean b) {
+        return putByte(b ? (byte) 1 : (byte) 0);
+    }
+
+    @Override
+    public KeySink putChar(char c) {
+        ensure(2);
+        buf[length++] = (byte) (c >>> 8);
+        buf[length++] = (byte) c;
+        return this;
+    }
+
+    @Override
+    public KeySink putChars(CharSequence chars) {
+        int num = chars.length();
+        ensure(num * 2);
+        for (int i = 0; i < num; i++) {
+            char c = chars.charAt(i);
+            buf[length++] = (byte) (c >>> 8);
+            buf[length++] = (byte) c;
+        }
+        return this;
+    }
+
+    @Override
+    public KeySink putInt(int i) {
+        ensure(4);
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            buf[length++] = (byte) (i >>> shift);
+        }
+        return this;
+    }
+
+    @Override
+    public KeySink putLong(long l) {
+        ensure(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buf[length++] = (byte) (l >>> shift);
+        }
+        return this;
+    }
+
+    /**
+     * Make room for more bytes.
+     * @param more the number of bytes to be put.
+     */
+    private void ensure(int more) {
+        if (length + more > buf.length) {
+            byte[] newBuf = new byte[Math.max(buf.length * 2, length + more)];
+            System.arraycopy(buf, 0, newBuf, 0, length);
+            buf = newBuf;
+        }
+    }
+}
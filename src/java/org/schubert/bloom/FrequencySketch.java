@@ -0,0 +1,298 @@
+/*
+ *           DO WHAT THE FUCK YOU WANT TO PUBLIC LICENSE
+ * Everyone is permitted to copy and distribute verbatim or modified
+ * copies of this license document, and changing it is allowed as long
+ * as the name is changed. You just DO WHAT THE FUCK YOU WANT TO.
+ *                http://www.wtfpl.net/txt/copying/
+ */
+
+package org.schubert.bloom;
+
+/**
+ * A TinyLFU frequency sketch for cache admission, i.e. a doorkeeper Bloom Filter in front of a count-min sketch.
+ * <p>
+ * The first occurrence of a key only sets its bits in the doorkeeper, so one-hit wonders never pollute the
+ * counters. Later occurrences increment DEPTH 4-bit counters, sixteen of them packed in a long word, and the
+ * estimated frequency is the minimum of them plus one if the key is in the doorkeeper. The doorkeeper and the
+ * counters share the hash values of a key through a BloomKey, so a recordAndEstimate() calculates at most
+ * max(k, DEPTH) hash values, and allocates nothing for byte keys or BloomKey.
+ * </p>
+ * <p>
+ * To age the frequencies, after sampleSize recordings all the counters are halved and the doorkeeper is cleared
+ * (TinyLFU, Einziger et al. 2017). A cache admits a candidate only if its estimated frequency is higher than the
+ * one of the victim to be evicted, see admit().
+ * </p>
+ * This class is not thread-safe.
+ * @param <T> type of the elements
+ */
+public class FrequencySketch<T> {
+    /** The number of counters of a key, i.e. the depth of the count-min sketch. */
+    public static final int DEPTH = 4;
+
+    /** The maximum value of a counter. */
+    public static final int MAX_COUNT = 15;
+
+    /** The default sample size relative to the expected number of keys, i.e. the cache size. */
+    public static final int SAMPLE_FACTOR = 10;
+
+    /** The False Positive Probability of the doorkeeper. */
+    public static final double DOORKEEPER_ERROR_RATE = 0.01;
+
+    /* The maximum number of long words of the counters, so the index and the counter offset use different bits. */
+    private static final int MAX_TABLE_SIZE = 1 << 28;
+
+    /* Halve each 4-bit counter after shifting the word right by one. */
+    private static final long HALVE_MASK = 0x7777777777777777L;
+
+    /* The first occurrences of the keys. */
+    private final SimpleBloomFilter<T> doorkeeper;
+
+    /* The counters, sixteen 4-bit counters per long word. */
+    private final long[] table;
+
+    /* The number of recordings before aging. */
+    private final long sampleSize;
+
+    /* Stream the objects into key bytes, or null to use their toString(). */
+    private final Funnel<? super T> funnel;
+
+    /* Reused to hash the keys. */
+    private final BloomKey bloomKey = new BloomKey();
+
+    /* The number of recordings since the last aging. */
+    private long recordNum = 0L;
+
+    /**
+     * Construct a empty frequency sketch.
+     * @param elemNum    The expected number of keys, i.e. the cache size.
+     * @param sampleSize The number of recordings before aging.
+     * @param funnel     Stream the objects into key bytes, or null to use their toString().
+     * @throws IllegalArgumentException when some arguments invalid
+     */
+    public FrequencySketch(long elemNum, long sampleSize, Funnel<? super T> funnel)
+            throws IllegalArgumentException {
+        /* Sanity check of the arguments. */
+        if (elemNum <= 0) {
+            throw new IllegalArgumentException("Invalid maximum number of elements: " + elemNum);
+        }
+
+        if (sampleSize <= 0) {
+            throw new IllegalArgumentException("Invalid sample size: " + sampleSize);
+        }
+
+        long tableSize = Math.min(Long.highestOneBit(elemNum), MAX_TABLE_SIZE);
+        if (tableSize < elemNum && tableSize < MAX_TABLE_SIZE) {
+            tableSize <<= 1;
+        }
+
+        this.doorkeeper = new BloomFilterBuilder().elemNum(elemNum).errorRate(DOORKEEPER_ERROR_RATE).build(funnel);
+        this.table      = new long[(int) tableSize];
+        this.sampleSize = sampleSize;
+        this.funnel     = funnel;
+    }
+
+    /**
+     * Construct a empty frequency sketch, aging after SAMPLE_FACTOR times elemNum recordings.
+     * @param elemNum The expected number of keys, i.e. the cache size.
+     * @throws IllegalArgumentException when some arguments invalid
+     */
+    public FrequencySketch(long elemNum)
+            throws IllegalArgumentException {
+        this(elemNum, sampleSizeOf(elemNum), null);
+    }
+
+    /**
+     * Get the doorkeeper Bloom Filter.
+     * @return the doorkeeper.
+     */
+    public SimpleBloomFilter<T> getDoorkeeper() {
+        return doorkeeper;
+    }
+
+    /**
+     * Get the number of recordings before aging.
+     * @return the sample size.
+     */
+    public long getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * Record a occurrence of a key whose hash values are held by a BloomKey, and estimate its frequency.
+     * @param key the key and its hash values
+     * @return the estimated frequency, including this occurrence.
+     */
+    public int recordAndEstimate(BloomKey key) {
+        int frequency;
+        if (!doorkeeper.mayContainHashed(key)) {
+            doorkeeper.addHashed(key);
+            frequency = 1 + countOf(key);
+        } else {
+            frequency = 1 + incrementAndCount(key);
+        }
+
+        if (++recordNum >= sampleSize) {
+            age();
+        }
+        return frequency;
+    }
+
+    /**
+     * Record a occurrence of a key, and estimate its frequency.
+     * @param key    the bytes array of element key
+     * @param offset the begin offset of the element key
+     * @param length the valid length of the element key
+     * @return the estimated frequency, including this occurrence.
+     */
+    public int recordAndEstimate(byte[] key, int offset, int length) {
+        return recordAndEstimate(bloomKey.reset(key, offset, length));
+    }
+
+    /**
+     * Record a occurrence of a key, and estimate its frequency.
+     * @param key the bytes array of element key
+     * @return the estimated frequency, including this occurrence.
+     */
+    public int recordAndEstimate(byte[] key) {
+        return recordAndEstimate(key, 0, key.length);
+    }
+
+    /**
+     * Record a occurrence of a object, and estimate its frequency.
+     * @param elem the element object
+     * @return the estimated frequency, including this occurrence.
+     */
+    public int recordAndEstimate(T elem) {
+        return recordAndEstimate(toBloomKey(elem));
+    }
+
+    /**
+     * Estimate the frequency of a key whose hash values are held by a BloomKey, without recording it.
+     * @param key the key and its hash values
+     * @return the estimated frequency.
+     */
+    public int estimate(BloomKey key) {
+        int count = countOf(key);
+        return doorkeeper.mayContainHashed(key) ? count + 1 : count;
+    }
+
+    /**
+     * Estimate the frequency of a object, without recording it.
+     * @param elem the element object
+     * @return the estimated frequency.
+     */
+    public int estimate(T elem) {
+        return estimate(toBloomKey(elem));
+    }
+
+    /**
+     * Decide whether a cache should admit a candidate by evicting a victim.
+     * @param candidate the object to be admitted
+     * @param victim    the object to be evicted
+     * @return true if the candidate is used more frequently than the victim.
+     */
+    public boolean admit(T candidate, T victim) {
+        int candidateFrequency = estimate(candidate);
+        return candidateFrequency > estimate(victim);
+    }
+
+    /**
+     * Age the frequencies, all the counters are halved and the doorkeeper is cleared.
+     */
+    public void age() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & HALVE_MASK;
+        }
+        doorkeeper.clear();
+        recordNum = 0;
+    }
+
+    /**
+     * Clear all the frequencies.
+     */
+    public void clear() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = 0;
+        }
+        doorkeeper.clear();
+        recordNum = 0;
+    }
+
+    /**
+     * Calculate the default sample size, SAMPLE_FACTOR times the expected number of keys.
+     * @param elemNum The expected number of keys.
+     * @return the sample size.
+     */
+    private static long sampleSizeOf(long elemNum) {
+        if ((elemNum <= 0) || (elemNum > Long.MAX_VALUE / SAMPLE_FACTOR)) {
+            throw new IllegalArgumentException("Invalid maximum number of elements: " + elemNum);
+        }
+        return elemNum * SAMPLE_FACTOR;
+    }
+
+    /**
+     * Hash a object by the reused BloomKey.
+     * @param elem the element object
+     * @return the reused BloomKey.
+     */
+    private BloomKey toBloomKey(T elem) {
+        if (funnel == null) {
+            return bloomKey.reset(elem.toString().getBytes(SimpleBloomFilter.CHARSET));
+        }
+        return bloomKey.reset(elem, funnel);
+    }
+
+    /**
+     * Get the minimum counter of a key.
+     * @param key the key and its hash values
+     * @return the count.
+     */
+    private int countOf(BloomKey key) {
+        int count = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++) {
+            long hashValue = key.getHashValue(i);
+            int shift = counterShift(hashValue);
+            count = Math.min(count, (int) (table[wordIndex(hashValue)] >>> shift) & MAX_COUNT);
+        }
+        return count;
+    }
+
+    /**
+     * Increment the counters of a key which are not saturated, and get the minimum counter.
+     * @param key the key and its hash values
+     * @return the count after increment.
+     */
+    private int incrementAndCount(BloomKey key) {
+        int count = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++) {
+            long hashValue = key.getHashValue(i);
+            int index = wordIndex(hashValue);
+            int shift = counterShift(hashValue);
+            int counter = (int) (table[index] >>> shift) & MAX_COUNT;
+            if (counter < MAX_COUNT) {
+                table[index] += (1L << shift);
+                counter++;
+            }
+            count = Math.min(count, counter);
+        }
+        return count;
+    }
+
+    /**
+     * Get the index of the long word holding a counter, from the low bits of the hash value.
+     * @param hashValue the hash value
+     * @return the index of the long word.
+     */
+    private int wordIndex(long hashValue) {
+        return (int) hashValue & (table.length - 1);
+    }
+
+    /**
+     * Get the offset of a counter in its long word, from the high 4 bits of the 32-bit hash value.
+     * @param hashValue the hash value
+     * @return the offset in bits.
+     */
+    private int counterShift(long hashValue) {
+        return ((int) (hashValue >>> 28) & 0xf) << 2;
+    }
+}
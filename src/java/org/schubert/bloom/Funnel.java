@@ -0,0 +1,25 @@
+/*
+ *           DO WHAT THE FUCK YOU WANT TO PUBLIC LICENSE
+ * Everyone is permitted to copy and distribute verbatim or modified
+ * copies of this license document, and changing it is allowed as long
+ * as the name is changed. You just DO WHAT THE FUCK YOU WANT TO.
+ *                http://www.wtfpl.net/txt/copying/
+ */
+
+package org.schubert.bloom;
+
+/**
+ * Stream the fields of a object into a KeySink, as the key bytes to be hashed by a Bloom Filter.
+ * It replaces the toString() serialization, which is slow, allocates, and may change across JVM versions and
+ * locales. Two objects which are equal must put the same fields in the same order, e.g. for (tenantId, userId,
+ * timestamp):
+ * <pre>
+ *     Funnel&lt;Event&gt; funnel = (event, sink) -&gt; sink.putInt(event.tenantId)
+ *             .putLong(event.userId).putLong(event.timestamp);
+ * </pre>
+ * @param <T> type of the objects
+ */
+public interface Funnel<T> {
+
+    void funnel(T from, KeySink into);
+}
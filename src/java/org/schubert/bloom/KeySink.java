@@ -0,0 +1,26 @@
+/*
+ *           DO WHAT THE FUCK YOU WANT TO PUBLIC LICENSE
+ * Everyone is permitted to copy and distribute verbatim or modified
+ * copies of this license document, and changing it is allowed as long
+ * as the name is changed. You just DO WHAT THE FUCK YOU WANT TO.
+ *                http://www.wtfpl.net/txt/copying/
+ */
+
+package org.schubert.bloom;
+
+/**
+ * The sink a Funnel streams the fields of a object into. The numbers are put in big-endian byte order,
+ * and a char is put as its two UTF-16 bytes, without any charset encoding.
+ */
+public interface KeySink {
+
+    KeySink putByte(byte b);
+    KeySink putBytes(byte[] bytes, int offset, int length);
+    KeySink putBytes(byte[] bytes);
+
+    KeySink putBoolean(boolean b);
+    KeySink putChar(char c);
+    KeySink putChars(CharSequence chars);
+    KeySink putInt(int i);
+    KeySink putLong(long l);
+}
@@ -0,0 +1,283 @@
+/*
+ *           DO WHAT THE FUCK YOU WANT TO PUBLIC LICENSE
+ * Everyone is permitted to copy and distribute verbatim or modified
+ * copies of this license document, and changing it is allowed as long
+ * as the name is changed. You just DO WHAT THE FUCK YOU WANT TO.
+ *                http://www.wtfpl.net/txt/copying/
+ */
+
+package org.schubert.bloom;
+
+/**
+ * A Bloom Filter over ordered long keys, which also answers "may any key in [from, to] have been added?".
+ * <p>
+ * Besides a key itself, its dyadic prefixes (key &gt;&gt;&gt; 1, key &gt;&gt;&gt; 2, ...) are added too, one per level,
+ * into the same underlying Bloom Filter. A range is decomposed into at most two dyadic intervals per level, each
+ * one is a single prefix probe. A positive prefix is doubted by descending to its children down to level 0, so a
+ * range query is about as accurate as a point query (Rosetta, SIGMOD 2020).
+ * </p>
+ * <p>
+ * The number of probes of a range query is bounded by maxProbeNum. When the bound is reached, or a dyadic
+ * interval is wider than the top level and needs too many probes, the answer is "may contain", so there is never
+ * a false negative. A range scan over a sorted store can skip the blocks for which mayContainRange() is false.
+ * </p>
+ * This class is not thread-safe.
+ */
+public class RangeBloomFilter {
+    /** The maximum number of prefix levels, level 0 is the key itself. */
+    public static final int MAX_LEVEL_NUM = Long.SIZE;
+
+    /** The default number of prefix levels, ranges up to 2^16 keys wide are decomposed directly. */
+    public static final int DEFAULT_LEVEL_NUM = 16;
+
+    /** The default maximum number of probes of a range query. */
+    public static final int DEFAULT_MAX_PROBE_NUM = 256;
+
+    /* Holds the prefixes of all levels. */
+    private final SimpleBloomFilter<Long> bloom;
+
+    /* The number of prefix levels. */
+    private final int levelNum;
+
+    /* The maximum number of probes of a range query. */
+    private final int maxProbeNum;
+
+    /* Encoded probe key, the level and the prefix, reused to avoid allocation. */
+    private final byte[] keyBuf = new byte[1 + Long.SIZE / Byte.SIZE];
+
+    /* The probes left for the current range query. */
+    private int probeLeft;
+
+    /* Currently number of added keys. */
+    private long currentElemNum = 0L;
+
+    /**
+     * Construct a empty Range Bloom Filter.
+     * @param elemNum     The expected number of keys to be added.
+     * @param errorRate   Expected False Positive Probability of a prefix probe.
+     * @param levelNum    The number of prefix levels, each one costs a insertion per key.
+     * @param maxProbeNum The maximum number of probes of a range query.
+     * @throws IllegalArgumentException when some arguments invalid
+     */
+    public RangeBloomFilter(long elemNum, double errorRate, int levelNum, int maxProbeNum)
+            throws IllegalArgumentException {
+        /* Sanity check of the arguments. */
+        if ((levelNum <= 0) || (levelNum > MAX_LEVEL_NUM)) {
+            throw new IllegalArgumentException("Invalid number of levels: " + levelNum);
+        }
+
+        if (maxProbeNum <= 0) {
+            throw new IllegalArgumentException("Invalid maximum number of probes: " + maxProbeNum);
+        }
+
+        if ((elemNum <= 0) || (elemNum > Long.MAX_VALUE / levelNum)) {
+            throw new IllegalArgumentException("Invalid maximum number of elements: " + elemNum);
+        }
+
+        this.bloom       = new SimpleBloomFilter<Long>(elemNum * levelNum, errorRate);
+        this.levelNum    = levelNum;
+        this.maxProbeNum = maxProbeNum;
+    }
+
+    /**
+     * Construct a empty Range Bloom Filter with the default number of levels and probes.
+     * @param elemNum   The expected number of keys to be added.
+     * @param errorRate Expected False Positive Probability of a prefix probe.
+     * @throws IllegalArgumentException when some arguments invalid
+     */
+    public RangeBloomFilter(long elemNum, double errorRate)
+            throws IllegalArgumentException {
+        this(elemNum, errorRate, DEFAULT_LEVEL_NUM, DEFAULT_MAX_PROBE_NUM);
+    }
+
+    /**
+     * Get the number of prefix levels.
+     * @return the number of prefix levels.
+     */
+    public int getLevelNum() {
+        return levelNum;
+    }
+
+    /**
+     * Get the maximum number of probes of a range query.
+     * @return the maximum number of probes.
+     */
+    public int getMaxProbeNum() {
+        return maxProbeNum;
+    }
+
+    /**
+     * Get the bit size of the underlying Bloom Filter.
+     * @return the bit size.
+     */
+    public long getBitSize() {
+        return bloom.getBitSize();
+    }
+
+    /**
+     * Get the current number of added keys.
+     * @return the current number of added keys.
+     */
+    public long getCurrentElemNum() {
+        return currentElemNum;
+    }
+
+    /**
+     * Get the current actual False Positive Probability of a prefix probe.
+     * @return the current actual False Positive Probability.
+     */
+    public double getCurrentErrorRate() {
+        return SimpleBloomFilter.calcErrorRate(currentElemNum * levelNum, bloom.getBitSize(), bloom.getHashNum());
+    }
+
+    /**
+     * Add a key and its prefixes of all levels.
+     * @param key the key
+     */
+    public void addElem(long key) {
+        long unsignedKey = key ^ Long.MIN_VALUE;
+        for (int level = 0; level < levelNum; level++) {
+            encode(level, unsignedKey >>> level);
+            bloom.addElem(keyBuf, 0, keyBuf.length);
+        }
+        currentElemNum++;
+    }
+
+    /**
+     * Return true if the key may have been added.
+     * @param key the key
+     * @return true if the key may have been added.
+     */
+    public boolean mayContain(long key) {
+        return probe(0, key ^ Long.MIN_VALUE);
+    }
+
+    /**
+     * Return true if any key in [from, to] may have been added.
+     * @param from the lowest key of the range, inclusive.
+     * @param to   the highest key of the range, inclusive.
+     * @return true if any key in the range may have been added.
+     * @throws IllegalArgumentException when from is greater than to
+     */
+    public boolean mayContainRange(long from, long to)
+            throws IllegalArgumentException {
+        if (from > to) {
+            throw new IllegalArgumentException("Invalid range: [" + from + ", " + to + "]");
+        }
+
+        if (currentElemNum == 0) {
+            return false;
+        }
+
+        /* flip the sign bit, so the signed order becomes the unsigned order */
+        long low = from ^ Long.MIN_VALUE;
+        long high = to ^ Long.MIN_VALUE;
+        probeLeft = maxProbeNum;
+
+        while (true) {
+            /* the widest dyadic interval starting at low and ending no later than high */
+            int level = (low == 0) ? Long.SIZE : Long.numberOfTrailingZeros(low);
+            long last = (level == Long.SIZE) ? -1L : low + ((1L << level) - 1);
+            while (Long.compareUnsigned(last, high) > 0) {
+                level--;
+                last = low + ((1L << level) - 1);
+            }
+
+            if (mayContainDyadic(level, low)) {
+                return true;
+            }
+            if (last == high) {
+                return false;
+            }
+            low = last + 1;
+        }
+    }
+
+    /**
+     * Clear the and make the Range Bloom Filter empty.
+     */
+    public void clear() {
+        bloom.clear();
+        currentElemNum = 0;
+    }
+
+    /**
+     * Check whether the Range Bloom Filter is empty.
+     * @return true if it is really empty.
+     */
+    public boolean isEmpty() {
+        return bloom.isEmpty();
+    }
+
+    /**
+     * Check a aligned dyadic interval [start, start + 2^level).
+     * @param level the level of the interval, in [0, 64].
+     * @param start the first unsigned key of the interval.
+     * @return true if any key in the interval may have been added.
+     */
+    private boolean mayContainDyadic(int level, long start) {
+        if (level < levelNum) {
+            return doubt(level, start >>> level);
+        }
+
+        /* wider than the top level, split it into the intervals of the top level */
+        int top = levelNum - 1;
+        int shift = level - top;
+        if ((shift >= Integer.SIZE - 1) || ((1 << shift) > probeLeft)) {
+            return true;
+        }
+
+        long prefix = start >>> top;
+        for (int i = 0; i < (1 << shift); i++) {
+            if (doubt(top, prefix + i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Probe a prefix, and if it is positive, descend to its children to make sure it is not a false positive.
+     * @param level  the level of the prefix.
+     * @param prefix the prefix, i.e. unsigned key &gt;&gt;&gt; level.
+     * @return true if any key with the prefix may have been added, or the probes are used up.
+     */
+    private boolean doubt(int level, long prefix) {
+        if (probeLeft <= 0) {
+            return true;
+        }
+        probeLeft--;
+
+        if (!probe(level, prefix)) {
+            return false;
+        }
+        if (level == 0) {
+            return true;
+        }
+        return doubt(level - 1, prefix << 1) || doubt(level - 1, (prefix << 1) | 1);
+    }
+
+    /**
+     * Probe a prefix in the underlying Bloom Filter.
+     * @param level  the level of the prefix.
+     * @param prefix the prefix, i.e. unsigned key &gt;&gt;&gt; level.
+     * @return true if the prefix may have been added.
+     */
+    private boolean probe(int level, long prefix) {
+        encode(level, prefix);
+        return bloom.mayContain(keyBuf, 0, keyBuf.length);
+    }
+
+    /**
+     * Encode a prefix and its level into the key buffer.
+     * @param level  the level of the prefix.
+     * @param prefix the prefix.
+     */
+    private void encode(int level, long prefix) {
+        keyBuf[0] = (byte) level;
+        for (int i = keyBuf.length - 1; i > 0; i--) {
+            keyBuf[i] = (byte) prefix;
+            prefix >>>= Byte.SIZE;
+        }
+    }
+}
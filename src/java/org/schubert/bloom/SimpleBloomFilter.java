@@ -8,6 +8,8 @@
 
 package org.schubert.bloom;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.nio.charset.Charset;
 
 /**
@@ -34,6 +36,19 @@ public class SimpleBloomFilter<T> implements BloomFilter<T> {
     /** The maximum number of hash functions, too many hash functions would make the bloom filter lose efficacy. */
     public static final int MAX_HASH_NUM = 128;
 
+    /* Atomic access to the bit words and the number of added elements, for addElemIfAbsentConcurrently(). */
+    private static final VarHandle BIT_WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle CURRENT_ELEM_NUM;
+
+    static {
+        try {
+            CURRENT_ELEM_NUM = MethodHandles.lookup().findVarHandle(SimpleBloomFilter.class, "currentElemNum",
+                    long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     /* Bit set holder, here use long typed array for at most 16 billion bits (16GB in memory). */
     private long[] bitWords;
 
@@ -55,6 +70,12 @@ public class SimpleBloomFilter<T> implements BloomFilter<T> {
     /* The expected False Positive Probability. */
     private double errorRate;
 
+    /* How to map a hash value to a bit index. */
+    private BitIndexing bitIndexing = BitIndexing.MODULO;
+
+    /* Stream the objects into key bytes, or null to use their toString(). */
+    private Funnel<? super T> funnel = null;
+
     /* Currently number of added elements. */
     private long currentElemNum = 0L;
 
@@ -70,6 +91,22 @@ public class SimpleBloomFilter<T> implements BloomFilter<T> {
      */
     public SimpleBloomFilter(long elemNum, long bitSize, int hashNum)
             throws IllegalArgumentException {
+        this(elemNum, bitSize, hashNum, BitIndexing.MODULO);
+    }
+
+    /**
+     * Construct a empty Bloom Filter by expected total number of elements, size of memory, number of hash
+     * and the mapping from hash value to bit index. It is usually called by BloomFilterBuilder, which picks
+     * these arguments for a given workload.
+     * @param elemNum     The expected number of elements to be added into this Bloom Filter
+     *                    It is usually a approximate value estimated by user.
+     * @param bitSize     The number bits to hold the Bloom Filter, it determines the memory requirement.
+     * @param hashNum     The number of hash function to filter a element.
+     * @param bitIndexing How to map a hash value to a bit index, it must support the bit size.
+     * @throws IllegalArgumentException when some arguments invalid
+     */
+    public SimpleBloomFilter(long elemNum, long bitSize, int hashNum, BitIndexing bitIndexing)
+            throws IllegalArgumentException {
 
         /* Sanity check of the arguments. */
         if (elemNum <= 0) {
@@ -85,14 +122,37 @@ public class SimpleBloomFilter<T> implements BloomFilter<T> {
             throw new IllegalArgumentException("Invalid number of hash function: " + hashNum);
         }
 
-        this.nElemNum  = elemNum;
-        this.mBitSize  = bitSize;
-        this.kHashNum  = hashNum;
-        this.errorRate = SimpleBloomFilter.calcErrorRate(this.nElemNum, this.mBitSize, this.kHashNum);
+        if (!bitIndexing.supports(bitSize)) {
+            throw new IllegalArgumentException("Invalid bit size: " + bitSize + " for bit indexing " + bitIndexing);
+        }
+
+        this.nElemNum    = elemNum;
+        this.mBitSize    = bitSize;
+        this.kHashNum    = hashNum;
+        this.bitIndexing = bitIndexing;
+        this.errorRate   = SimpleBloomFilter.calcErrorRate(this.nElemNum, this.mBitSize, this.kHashNum);
 
         initBitWords(this.mBitSize);
     }
 
+    /**
+     * Construct a empty Bloom Filter like SimpleBloomFilter(elemNum, bitSize, hashNum, bitIndexing), which hashes
+     * the objects by a Funnel instead of their toString().
+     * @param elemNum     The expected number of elements to be added into this Bloom Filter
+     *                    It is usually a approximate value estimated by user.
+     * @param bitSize     The number bits to hold the Bloom Filter, it determines the memory requirement.
+     * @param hashNum     The number of hash function to filter a element.
+     * @param bitIndexing How to map a hash value to a bit index, it must support the bit size.
+     * @param funnel      Stream the objects into key bytes, or null to use their toString().
+     * @throws IllegalArgumentException when some arguments invalid
+     */
+    public SimpleBloomFilter(long elemNum, long bitSize, int hashNum, BitIndexing bitIndexing,
+                             Funnel<? super T> funnel)
+            throws IllegalArgumentException {
+        this(elemNum, bitSize, hashNum, bitIndexing);
+        this.funnel = funnel;
+    }
+
     /**
      * Construct a empty Bloom Filter by expected total number of elements, and expected False Positive Probability.
      * If the user know the approximate cardinality of it's data set, and have a expected False Positive Probability,
@@ -129,6 +189,21 @@ public class SimpleBloomFilter<T> implements BloomFilter<T> {
         initBitWords(this.mBitSize);
     }
 
+    /**
+     * Construct a empty Bloom Filter like SimpleBloomFilter(elemNum, errorRate), which hashes the objects by
+     * a Funnel instead of their toString(), e.g. composite keys can be hashed without any intermediate object.
+     * @param elemNum   The expected number of elements to be added into this Bloom Filter
+     *                  It is usually a approximate value estimated by user.
+     * @param errorRate Expected False Positive Probability.
+     * @param funnel    Stream the objects into key bytes, or null to use their toString().
+     * @throws IllegalArgumentException when some arguments invalid
+     */
+    public SimpleBloomFilter(long elemNum, double errorRate, Funnel<? super T> funnel)
+            throws IllegalArgumentException {
+        this(elemNum, errorRate);
+        this.funnel = funnel;
+    }
+
     /**
      * Construct a empty Bloom Filter by expected bit size (memory), and expected False Positive Probability.
      * If the user have strict or explicit memory limitation, and have a expected False Positive Probability,
@@ -206,6 +281,22 @@ public class SimpleBloomFilter<T> implements BloomFilter<T> {
         return kHashNum;
     }
 
+    /**
+     * Get how to map a hash value to a bit index.
+     * @return the mapping from hash value to bit index.
+     */
+    public BitIndexing getBitIndexing() {
+        return bitIndexing;
+    }
+
+    /**
+     * Get the Funnel which streams the objects into key bytes.
+     * @return the Funnel, or null if the objects are hashed by their toString().
+     */
+    public Funnel<? super T> getFunnel() {
+        return funnel;
+    }
+
     /**
      * Get the expected error rate, i.e. False Positive Probability
      * @return the expected error rate, i.e. False Positive Probability
@@ -245,7 +336,7 @@ public class SimpleBloomFilter<T> implements BloomFilter<T> {
 
         for (int i = 0; i < kHashNum; i++) {
             hashValue = getHashValue(key, offset, length, i);
-            setBit(Math.abs(hashValue) % mBitSize);
+            setBit(toBitIndex(hashValue));
         }
 
         currentElemNum++;
@@ -261,13 +352,18 @@ public class SimpleBloomFilter<T> implements BloomFilter<T> {
     }
 
     /**
-     * Add an object to the Bloom filter. The output from the object's toString() method is used
-     * as input to the hash functions.
+     * Add an object to the Bloom filter. The key bytes streamed by the Funnel, or if there is no Funnel,
+     * the output from the object's toString() method is used as input to the hash functions.
      * @param elem the element object
      */
     @Override
     public void addElem(T elem) {
-        addElem(elem.toString().getBytes(CHARSET));
+        if (funnel == null) {
+            addElem(elem.toString().getBytes(CHARSET));
+        } else {
+            ByteKeySink sink = ByteKeySink.get().funnel(elem, funnel);
+            addElem(sink.getBytes(), 0, sink.getLength());
+        }
     }
 
     /**
@@ -284,7 +380,7 @@ public class SimpleBloomFilter<T> implements BloomFilter<T> {
 
         for (int i = 0; i < kHashNum; i++) {
             hashValue = getHashValue(key, offset, length, i);
-            if(!isSet(Math.abs(hashValue) % mBitSize)) {
+            if(!isSet(toBitIndex(hashValue))) {
                 /* definitely not in set */
                 return false;
             }
@@ -311,7 +407,161 @@ public class SimpleBloomFilter<T> implements BloomFilter<T> {
      */
     @Override
     public boolean mayContain(T elem) {
-        return mayContain(elem.toString().getBytes(CHARSET));
+        if (funnel == null) {
+            return mayContain(elem.toString().getBytes(CHARSET));
+        }
+
+        ByteKeySink sink = ByteKeySink.get().funnel(elem, funnel);
+        return mayContain(sink.getBytes(), 0, sink.getLength());
+    }
+
+    /**
+     * Add a element whose hash values are held by a BloomKey, so they are not calculated again.
+     * @param key the key and its hash values
+     */
+    @Override
+    public void addHashed(BloomKey key) {
+        for (int i = 0; i < kHashNum; i++) {
+            setBit(toBitIndex(key.getHashValue(i)));
+        }
+
+        currentElemNum++;
+    }
+
+    /**
+     * Return true if the element whose hash values are held by a BloomKey may have been added into the Bloom Filter.
+     * @param key the key and its hash values
+     * @return true if the element may have been added into the Bloom Filter.
+     */
+    @Override
+    public boolean mayContainHashed(BloomKey key) {
+        for (int i = 0; i < kHashNum; i++) {
+            if (!isSet(toBitIndex(key.getHashValue(i)))) {
+                /* definitely not in set */
+                return false;
+            }
+        }
+
+        /* possibly in set, with False Positive Probability. */
+        return true;
+    }
+
+    /**
+     * Add a element into the Bloom Filter, and tell whether it was absent before. This is equivalent to
+     * a mayContain() followed by an addElem(), but only calculates the hash values once.
+     * @param key    the bytes array of element key
+     * @param offset the begin offset of the element key
+     * @param length the valid length of the element key
+     * @return true if the element was definitely not in the Bloom Filter before this call.
+     */
+    public boolean addElemIfAbsent(byte[] key, int offset, int length) {
+        long hashValue;
+        long bitIndex;
+        boolean absent = false;
+
+        for (int i = 0; i < kHashNum; i++) {
+            hashValue = getHashValue(key, offset, length, i);
+            bitIndex = toBitIndex(hashValue);
+            if (!isSet(bitIndex)) {
+                setBit(bitIndex);
+                absent = true;
+            }
+        }
+
+        if (absent) {
+            currentElemNum++;
+        }
+        return absent;
+    }
+
+    /**
+     * Add a element into the Bloom Filter, and tell whether it was absent before.
+     * @param key the bytes array of element key
+     * @return true if the element was definitely not in the Bloom Filter before this call.
+     */
+    public boolean addElemIfAbsent(byte[] key) {
+        return addElemIfAbsent(key, 0, key.length);
+    }
+
+    /**
+     * Add an object into the Bloom Filter, and tell whether it was absent before.
+     * @param elem the element object
+     * @return true if the element was definitely not in the Bloom Filter before this call.
+     */
+    public boolean addElemIfAbsent(T elem) {
+        if (funnel == null) {
+            return addElemIfAbsent(elem.toString().getBytes(CHARSET));
+        }
+
+        ByteKeySink sink = ByteKeySink.get().funnel(elem, funnel);
+        return addElemIfAbsent(sink.getBytes(), 0, sink.getLength());
+    }
+
+    /**
+     * Add a element into the Bloom Filter, and tell whether it was absent before, without any lock. The bits
+     * are set by atomic operations, so this method may be called by many threads at the same time, but not
+     * together with the other methods which modify the Bloom Filter. Two concurrent calls for the same element
+     * may both return true, serialize the calls for equal elements if that matters.
+     * @param key    the bytes array of element key
+     * @param offset the begin offset of the element key
+     * @param length the valid length of the element key
+     * @return true if this call set any bit, i.e. the element was definitely not in the Bloom Filter before.
+     */
+    public boolean addElemIfAbsentConcurrently(byte[] key, int offset, int length) {
+        boolean absent = false;
+
+        for (int i = 0; i < kHashNum; i++) {
+            long bitIndex = toBitIndex(getHashValue(key, offset, length, i));
+            int wordIndex = bitIndexToWordIndex(bitIndex);
+            long mask = 1L << bitIndexToBitOffset(bitIndex);
+            /* skip the atomic update, and the cache line invalidation, when the bit is already set */
+            if ((((long) BIT_WORDS.getAcquire(bitWords, wordIndex)) & mask) == 0
+                    && (((long) BIT_WORDS.getAndBitwiseOr(bitWords, wordIndex, mask)) & mask) == 0) {
+                absent = true;
+            }
+        }
+
+        if (absent) {
+            CURRENT_ELEM_NUM.getAndAdd(this, 1L);
+        }
+        return absent;
+    }
+
+    /**
+     * Add an object into the Bloom Filter, and tell whether it was absent before, without any lock.
+     * @param elem the element object
+     * @return true if this call set any bit, i.e. the element was definitely not in the Bloom Filter before.
+     */
+    public boolean addElemIfAbsentConcurrently(T elem) {
+        if (funnel == null) {
+            byte[] key = elem.toString().getBytes(CHARSET);
+            return addElemIfAbsentConcurrently(key, 0, key.length);
+        }
+
+        ByteKeySink sink = ByteKeySink.get().funnel(elem, funnel);
+        return addElemIfAbsentConcurrently(sink.getBytes(), 0, sink.getLength());
+    }
+
+    /**
+     * Merge another Bloom Filter into this one, so this one may contain all the elements of both.
+     * Both Bloom Filters must have the same bit size, number of hash functions, bit indexing and Funnel. The
+     * current number of elements becomes the sum of both, which over-counts elements added into both.
+     * @param other the Bloom Filter to be merged, it is not modified.
+     * @throws IllegalArgumentException when the two Bloom Filters are not of the same shape.
+     */
+    public void merge(SimpleBloomFilter<T> other)
+            throws IllegalArgumentException {
+        if ((other.mBitSize != mBitSize) || (other.kHashNum != kHashNum) || (other.bitIndexing != bitIndexing)
+                || (other.funnel != funnel)) {
+            throw new IllegalArgumentException("Cannot merge Bloom Filter of another Funnel, or of bit size "
+                    + other.mBitSize + ", hash number " + other.kHashNum + " and bit indexing " + other.bitIndexing
+                    + " into bit size " + mBitSize + ", hash number " + kHashNum + " and bit indexing " + bitIndexing);
+        }
+
+        for (int i = 0; i < bitWords.length; i++) {
+            bitWords[i] |= other.bitWords[i];
+        }
+        currentElemNum += other.currentElemNum;
     }
 
     /**
@@ -385,7 +635,7 @@ public class SimpleBloomFilter<T> implements BloomFilter<T> {
      * @return the optimal number of independent hash functions.
      */
     public static int calcHashNum(long elemNum, long bitSize) {
-        return (int) Math.ceil(Math.log(2) * (bitSize / elemNum));
+        return (int) Math.ceil(Math.log(2) * ((double) bitSize / elemNum));
     }
 
     /**
@@ -419,12 +669,29 @@ public class SimpleBloomFilter<T> implements BloomFilter<T> {
         return (int) (bitIndex % Long.SIZE);
     }
 
+    /**
+     * Get the bitset, for the classes in this package which read the bits directly, e.g. BloomFilterBank.
+     * @return the bitset in long word array, it must not be modified.
+     */
+    long[] getBitWords() {
+        return bitWords;
+    }
+
+    /**
+     * Map a hash value to a bit index.
+     * @param hashValue the hash value
+     * @return the bit index.
+     */
+    private long toBitIndex(long hashValue) {
+        return bitIndexing.toBitIndex(hashValue, mBitSize);
+    }
+
     /**
      * Set bit in the bitset.
      * @param bitIndex the bit index.
      */
     private void setBit(long bitIndex) {
-        bitWords[bitIndexToWordIndex(bitIndex)] |= (1 << bitIndexToBitOffset(bitIndex));
+        bitWords[bitIndexToWordIndex(bitIndex)] |= (1L << bitIndexToBitOffset(bitIndex));
     }
 
     /**
@@ -433,21 +700,26 @@ public class SimpleBloomFilter<T> implements BloomFilter<T> {
      * @return true if the bit is set (1).
      */
     private boolean isSet(long bitIndex) {
-        return ((bitWords[bitIndexToWordIndex(bitIndex)] & (1 << bitIndexToBitOffset(bitIndex))) != 0);
+        return ((bitWords[bitIndexToWordIndex(bitIndex)] & (1L << bitIndexToBitOffset(bitIndex))) != 0);
     }
 
     /**
      * Murmur Hash Function, it is very fast, non-cryptographic, and even distributed.
+     * It is shared by the other filters in this package, so they can probe the same bits for a key.
      * @param key    the key byte array
      * @param offset the begin offset of the key bytes
      * @param length the length of the valid key bytes
      * @param seed   seed value
      * @return the long hash value
      */
-    private long getHashValue(byte[] key, int offset, int length, int seed) {
+    static long getHashValue(byte[] key, int offset, int length, int seed) {
         int m = 0x5bd1e995;
         int r = 24;
-        int h = seed ^ length;
+        /*
+         * spread the seed, or for short keys, key byte b with seed i hashes the same as
+         * key byte (b ^ d) with seed (i ^ d), and similar keys would share most of their bits.
+         */
+        int h = (seed * 0x9e3779b9) ^ length;
         int len_4 = length >> 2;
         int len_m;
         int left;
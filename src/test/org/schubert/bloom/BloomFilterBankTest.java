@@ -0,0 +1,111 @@
+/*
+ *           DO WHAT THE FUCK YOU WANT TO PUBLIC LICENSE
+ * Everyone is permitted to copy and distribute verbatim or modified
+ * copies of this license document, and changing it is allowed as long
+ * as the name is changed. You just DO WHAT THE FUCK YOU WANT TO.
+ *                http://www.wtfpl.net/txt/copying/
+ */
+
+package org.schubert.bloom;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Unit Test for BloomFilterBank.
+ */
+public class BloomFilterBankTest {
+
+    @Test
+    public void testAddSegment() throws Exception {
+        System.out.println("testAddSegment");
+        BloomFilterBank<String> bank = new BloomFilterBank<String>(1000, 0.01, 130);
+        assertEquals(3, bank.getSliceWordNum());
+        for (int i = 0; i < 130; i++) {
+            assertEquals(i, bank.addSegment());
+        }
+        assertEquals(-1, bank.addSegment());
+        assertEquals(130, bank.getSegmentNum());
+
+        bank.retireSegment(70);
+        assertFalse(bank.isActive(70));
+        assertEquals(129, bank.getSegmentNum());
+        assertEquals(70, bank.addSegment());
+    }
+
+    @Test
+    public void testMayContain() throws Exception {
+        System.out.println("testMayContain");
+        BloomFilterBank<String> bank = new BloomFilterBank<String>(1000, 0.001, 200);
+        for (int i = 0; i < 200; i++) {
+            bank.addSegment();
+        }
+        for (int i = 0; i < 200; i++) {
+            bank.addElem(i, "key" + i);
+            bank.addElem(i, "common");
+        }
+        assertEquals(2, bank.getCurrentElemNum(199));
+
+        long[] segments = new long[bank.getSliceWordNum()];
+        for (int i = 0; i < 200; i++) {
+            assertTrue(bank.mayContain("key" + i, segments));
+            assertTrue((segments[i / 64] & (1L << i)) != 0);
+        }
+
+        assertTrue(bank.mayContain("common", segments));
+        assertEquals(-1L, segments[0]);
+        assertEquals(-1L, segments[1]);
+        assertEquals(-1L, segments[2]);
+        assertEquals(0xffL, segments[3]);
+
+        int falsePositive = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (bank.mayContain("absent" + i, segments)) {
+                falsePositive++;
+            }
+        }
+        assertTrue(falsePositive < 500);
+
+        bank.retireSegment(5);
+        long[] result = bank.mayContain("key5");
+        assertTrue((result[0] & (1L << 5)) == 0);
+        result = bank.mayContain("common");
+        assertEquals(-1L & ~(1L << 5), result[0]);
+    }
+
+    @Test
+    public void testAddSegmentFromFilter() throws Exception {
+        System.out.println("testAddSegmentFromFilter");
+        SimpleBloomFilter<Integer> bloom = new BloomFilterBuilder().elemNum(1000).errorRate(0.01).build();
+        for (int i = 0; i < 1000; i++) {
+            bloom.addElem(i);
+        }
+
+        BloomFilterBank<Integer> bank = new BloomFilterBank<Integer>(bloom.getBitSize(), bloom.getHashNum(),
+                bloom.getBitIndexing(), 64);
+        int empty = bank.addSegment();
+        int loaded = bank.addSegment(bloom);
+        assertEquals(1000, bank.getCurrentElemNum(loaded));
+
+        long[] segments = new long[1];
+        for (int i = 0; i < 100000; i++) {
+            assertEquals(bloom.mayContain(i), bank.mayContain(i, segments));
+            assertEquals(0, segments[0] & (1L << empty));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddSegmentInvalidShape() throws Exception {
+        System.out.println("testAddSegmentInvalidShape");
+        new BloomFilterBank<String>(1000, 0.01, 64).addSegment(new SimpleBloomFilter<String>(1000, 0.02));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddElemInvalidSlot() throws Exception {
+        System.out.println("testAddElemInvalidSlot");
+        new BloomFilterBank<String>(1000, 0.01, 64).addElem(3, "key");
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ *           DO WHAT THE FUCK YOU WANT TO PUBLIC LICENSE
+ * Everyone is permitted to copy and distribute verbatim or modified
+ * copies of this license document, and changing it is allowed as long
+ * as the name is changed. You just DO WHAT THE FUCK YOU WANT TO.
+ *                http://www.wtfpl.net/txt/copying/
+ */
+
+package org.schubert.bloom;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Unit Test for BloomFilterBuilder and BitIndexing.
+ */
+public class BloomFilterBuilderTest {
+
+    @Test
+    public void testPlan() throws Exception {
+        System.out.println("testPlan");
+        BloomFilterBuilder.Plan plan = new BloomFilterBuilder().elemNum(100000).errorRate(0.01).plan();
+        assertTrue(plan.getExpectErrorRate() <= 0.01);
+        assertTrue(plan.getBitIndexing() != BitIndexing.MODULO);
+        long textbookBitSize = SimpleBloomFilter.calcBitSize(100000, 0.01);
+        assertTrue(plan.getBitSize() <= 2 * textbookBitSize);
+        assertTrue(plan.getHashNum() <= SimpleBloomFilter.calcHashNum(100000, textbookBitSize));
+    }
+
+    @Test
+    public void testPlanMissHeavy() throws Exception {
+        System.out.println("testPlanMissHeavy");
+        BloomFilterBuilder.Plan hits = new BloomFilterBuilder().elemNum(100000).errorRate(0.001)
+                .hitRatio(1.0).plan();
+        BloomFilterBuilder.Plan misses = new BloomFilterBuilder().elemNum(100000).errorRate(0.001)
+                .hitRatio(0.0).plan();
+        assertTrue(hits.getExpectErrorRate() <= 0.001);
+        assertTrue(misses.getExpectErrorRate() <= 0.001);
+        /* hits pay k probes, misses pay for the cache misses of a larger Bloom Filter */
+        assertTrue(hits.getHashNum() < misses.getHashNum());
+        assertTrue(hits.getBitSize() > misses.getBitSize());
+        assertTrue(misses.getMissProbeNum() < 2.0);
+    }
+
+    @Test
+    public void testPlanPowerOfTwo() throws Exception {
+        System.out.println("testPlanPowerOfTwo");
+        BloomFilterBuilder.Plan plan = new BloomFilterBuilder().elemNum(1000).errorRate(0.01).hitRatio(0.0).plan();
+        assertEquals(BitIndexing.MASK, plan.getBitIndexing());
+        assertTrue(plan.getExpectErrorRate() <= 0.01);
+    }
+
+    @Test
+    public void testPlanCacheSize() throws Exception {
+        System.out.println("testPlanCacheSize");
+        BloomFilterBuilder.Plan inCache = new BloomFilterBuilder().elemNum(10000000).errorRate(0.01)
+                .hitRatio(0.0).plan();
+        BloomFilterBuilder.Plan outOfCache = new BloomFilterBuilder().elemNum(10000000).errorRate(0.01)
+                .hitRatio(0.0).cacheBitSize(1024).lastLevelCacheBitSize(8192).plan();
+        assertTrue(outOfCache.getHashNum() < inCache.getHashNum());
+        assertTrue(outOfCache.getExpectProbeCost() > inCache.getExpectProbeCost());
+    }
+
+    @Test
+    public void testPlanOutOfBudget() throws Exception {
+        System.out.println("testPlanOutOfBudget");
+        BloomFilterBuilder.Plan plan = new BloomFilterBuilder().elemNum(100000).errorRate(0.01)
+                .maxBitSize(500000).plan();
+        assertEquals(500000, plan.getBitSize());
+        assertEquals(4, plan.getHashNum());
+        assertTrue(plan.getExpectErrorRate() > 0.01);
+    }
+
+    @Test
+    public void testPlanWorstErrorRate() throws Exception {
+        System.out.println("testPlanWorstErrorRate");
+        BloomFilterBuilder builder = new BloomFilterBuilder().elemNum(1000).errorRate(1.0);
+        BloomFilterBuilder.Plan plan = builder.plan();
+        assertTrue(plan.getBitSize() >= 1);
+        SimpleBloomFilter<String> bloom = builder.build();
+        assertEquals(plan.getBitSize(), bloom.getBitSize());
+        assertEquals(plan.getBitIndexing(), bloom.getBitIndexing());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPlanInvalidElemNum() throws Exception {
+        System.out.println("testPlanInvalidElemNum");
+        new BloomFilterBuilder().errorRate(0.01).plan();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPlanInvalidHitRatio() throws Exception {
+        System.out.println("testPlanInvalidHitRatio");
+        new BloomFilterBuilder().elemNum(1000).errorRate(0.01).hitRatio(1.5).plan();
+    }
+
+    @Test
+    public void testBuild() throws Exception {
+        System.out.println("testBuild");
+        BloomFilterBuilder builder = new BloomFilterBuilder().elemNum(10000).errorRate(0.01).hitRatio(0.1);
+        BloomFilterBuilder.Plan plan = builder.plan();
+        SimpleBloomFilter<Integer> bloom = builder.build();
+        assertEquals(plan.getBitSize(), bloom.getBitSize());
+        assertEquals(plan.getHashNum(), bloom.getHashNum());
+        assertEquals(plan.getBitIndexing(), bloom.getBitIndexing());
+
+        for (int i = 0; i < 10000; i++) {
+            bloom.addElem(i);
+        }
+        int falsePositive = 0;
+        for (int i = 10000; i < 110000; i++) {
+            if (bloom.mayContain(i)) {
+                falsePositive++;
+            }
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(bloom.mayContain(i));
+        }
+        assertTrue(falsePositive < 100000 * 0.02);
+    }
+
+    @Test
+    public void testCalcBitSize() throws Exception {
+        System.out.println("testCalcBitSize");
+        long bitSize = BloomFilterBuilder.calcBitSize(6666666L, 0.0081, 7);
+        assertEquals(0.0081, SimpleBloomFilter.calcErrorRate(6666666L, bitSize, 7), 0.00001);
+        assertTrue(bitSize >= SimpleBloomFilter.calcBitSize(6666666L, 0.0081));
+        assertEquals(-1, BloomFilterBuilder.calcBitSize(Long.MAX_VALUE / 2, 0.0000001, 1));
+    }
+
+    @Test
+    public void testBitIndexing() throws Exception {
+        System.out.println("testBitIndexing");
+        assertTrue(BitIndexing.MASK.supports(1024));
+        assertFalse(BitIndexing.MASK.supports(1000));
+        assertTrue(BitIndexing.MULTIPLY_SHIFT.supports(1000));
+        assertFalse(BitIndexing.MULTIPLY_SHIFT.supports(BitIndexing.MAX_FAST_BIT_SIZE + 1));
+        assertTrue(BitIndexing.MODULO.supports(SimpleBloomFilter.MAX_BIT_SIZE));
+        for (BitIndexing indexing : BitIndexing.values()) {
+            assertFalse(indexing.supports(0));
+            assertFalse(indexing.supports(-1));
+        }
+
+        for (BitIndexing indexing : BitIndexing.values()) {
+            assertEquals(0, indexing.toBitIndex(0L, 1000));
+            assertTrue(indexing.toBitIndex(-1L, 1024) < 1024);
+            assertTrue(indexing.toBitIndex(-1L, 1024) >= 0);
+        }
+        assertEquals(999, BitIndexing.MULTIPLY_SHIFT.toBitIndex(0xffffffffL, 1000));
+        assertEquals(5, BitIndexing.MASK.toBitIndex(1029L, 1024));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorInvalidBitIndexing() throws Exception {
+        System.out.println("testConstructorInvalidBitIndexing");
+        new SimpleBloomFilter<String>(1000, 10000, 7, BitIndexing.MASK);
+    }
+}
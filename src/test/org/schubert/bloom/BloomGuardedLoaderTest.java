@@ -0,0 +1,116 @@
+/*
+ *           DO WHAT THE FUCK YOU WANT TO PUBLIC LICENSE
+ * Everyone is permitted to copy and distribute verbatim or modified
+ * copies of this license document, and changing it is allowed as long
+ * as the name is changed. You just DO WHAT THE FUCK YOU WANT TO.
+ *                http://www.wtfpl.net/txt/copying/
+ */
+
+package org.schubert.bloom;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit Test for BloomGuardedLoader.
+ */
+public class BloomGuardedLoaderTest {
+
+    @Test
+    public void testLoad() throws Exception {
+        System.out.println("testLoad");
+        final Map<String, Integer> store = new ConcurrentHashMap<String, Integer>();
+        final AtomicLong lookups = new AtomicLong();
+        BloomGuardedLoader<String, Integer> loader = new BloomGuardedLoader<String, Integer>(
+                new SimpleBloomFilter<String>(1000, 0.0001), key -> {
+                    lookups.incrementAndGet();
+                    return store.get(key);
+                }, Runnable::run);
+
+        for (int i = 0; i < 100; i++) {
+            loader.recordWrite("key" + i);
+            store.put("key" + i, i);
+        }
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.valueOf(i), loader.load("key" + i));
+        }
+        for (int i = 100; i < 1100; i++) {
+            assertNull(loader.load("key" + i));
+        }
+
+        assertEquals(lookups.get(), loader.getLoadNum());
+        assertEquals(1000, loader.getAvoidedNum() + loader.getFalsePositiveNum());
+        assertEquals(100, loader.getLoadNum() - loader.getFalsePositiveNum());
+        assertTrue(loader.getAvoidedNum() > 990);
+        assertTrue(loader.getObservedErrorRate() < 0.01);
+
+        loader.resetStats();
+        assertEquals(0, loader.getLoadNum());
+        assertEquals(0.0, loader.getObservedErrorRate(), 0.0);
+    }
+
+    @Test
+    public void testLoadAllAsync() throws Exception {
+        System.out.println("testLoadAllAsync");
+        final Map<Integer, String> store = new HashMap<Integer, String>();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            BloomGuardedLoader<Integer, String> loader = new BloomGuardedLoader<Integer, String>(
+                    new SimpleBloomFilter<Integer>(1000, 0.0001), store::get, null, executor);
+            for (int i = 0; i < 10; i++) {
+                loader.recordWrite(i);
+                store.put(i, "v" + i);
+            }
+
+            assertEquals("v3", loader.loadAsync(3).get(10, TimeUnit.SECONDS));
+            Map<Integer, String> values = loader.loadAllAsync(Arrays.asList(1, 2, 20, 30))
+                    .get(10, TimeUnit.SECONDS);
+            assertEquals(2, values.size());
+            assertEquals("v1", values.get(1));
+            assertEquals("v2", values.get(2));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testLoadAllBatched() throws Exception {
+        System.out.println("testLoadAllBatched");
+        final Map<Integer, String> store = new HashMap<Integer, String>();
+        final AtomicLong batches = new AtomicLong();
+        BloomGuardedLoader<Integer, String> loader = new BloomGuardedLoader<Integer, String>(
+                new SimpleBloomFilter<Integer>(1000, 0.0001), store::get, keys -> {
+                    batches.incrementAndGet();
+                    Map<Integer, String> found = new HashMap<Integer, String>();
+                    for (Integer key : keys) {
+                        if (store.containsKey(key)) {
+                            found.put(key, store.get(key));
+                        }
+                    }
+                    return found;
+                }, Runnable::run);
+        for (int i = 0; i < 10; i++) {
+            loader.recordWrite(i);
+            store.put(i, "v" + i);
+        }
+
+        Map<Integer, String> values = loader.loadAll(Arrays.asList(1, 2, 3, 40, 50));
+        assertEquals(3, values.size());
+        assertEquals(1, batches.get());
+        assertEquals(0, loader.loadAll(Arrays.asList(40, 50)).size());
+        assertTrue(loader.getAvoidedNum() >= 2);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ *           DO WHAT THE FUCK YOU WANT TO PUBLIC LICENSE
+ * Everyone is permitted to copy and distribute verbatim or modified
+ * copies of this license document, and changing it is allowed as long
+ * as the name is changed. You just DO WHAT THE FUCK YOU WANT TO.
+ *                http://www.wtfpl.net/txt/copying/
+ */
+
+package org.schubert.bloom;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Unit Test for BloomKey and the hashed methods of the Bloom Filters.
+ */
+public class BloomKeyTest {
+
+    /* An exact set of keys, which hashes otherwise and relies on the default hashed methods. */
+    private static final class ExactFilter implements BloomFilter<String> {
+        private final Set<String> keys = new HashSet<String>();
+
+        public long getMaxElemNum() {
+            return Long.MAX_VALUE;
+        }
+
+        public long getBitSize() {
+            return 0;
+        }
+
+        public int getHashNum() {
+            return 0;
+        }
+
+        public double getExpectErrorRate() {
+            return 0.0;
+        }
+
+        public long getCurrentElemNum() {
+            return keys.size();
+        }
+
+        public double getCurrentErrorRate() {
+            return 0.0;
+        }
+
+        public void addElem(byte[] key, int offset, int length) {
+            keys.add(new String(key, offset, length, SimpleBloomFilter.CHARSET));
+        }
+
+        public void addElem(byte[] key) {
+            addElem(key, 0, key.length);
+        }
+
+        public void addElem(String elem) {
+            keys.add(elem);
+        }
+
+        public boolean mayContain(byte[] key, int offset, int length) {
+            return keys.contains(new String(key, offset, length, SimpleBloomFilter.CHARSET));
+        }
+
+        public boolean mayContain(byte[] key) {
+            return mayContain(key, 0, key.length);
+        }
+
+        public boolean mayContain(String elem) {
+            return keys.contains(elem);
+        }
+
+        public void clear() {
+            keys.clear();
+        }
+
+        public boolean isEmpty() {
+            return keys.isEmpty();
+        }
+    }
+
+    @Test
+    public void testGetHashValue() throws Exception {
+        System.out.println("testGetHashValue");
+        byte[] bytes = "hello".getBytes(SimpleBloomFilter.CHARSET);
+        BloomKey key = new BloomKey(bytes);
+        long hash5 = key.getHashValue(5);
+        assertEquals(SimpleBloomFilter.getHashValue(bytes, 0, bytes.length, 5), hash5);
+        assertEquals(SimpleBloomFilter.getHashValue(bytes, 0, bytes.length, 0), key.getHashValue(0));
+
+        byte[] other = "xxhelloxx".getBytes(SimpleBloomFilter.CHARSET);
+        key.reset(other, 2, 5);
+        assertEquals(hash5, key.getHashValue(5));
+        key.reset(other);
+        assertTrue(hash5 != key.getHashValue(5));
+    }
+
+    @Test
+    public void testHashedAcrossFilters() throws Exception {
+        System.out.println("testHashedAcrossFilters");
+        BloomFilter<String> small = new SimpleBloomFilter<String>(1000, 0.1);
+        BloomFilter<String> large = new SimpleBloomFilter<String>(100000, 0.0001);
+        BloomFilter<String> fast = new BloomFilterBuilder().elemNum(1000).errorRate(0.01).build();
+        BloomKey key = new BloomKey();
+
+        for (int i = 0; i < 1000; i++) {
+            key.reset(("key" + i).getBytes(SimpleBloomFilter.CHARSET));
+            small.addHashed(key);
+            large.addHashed(key);
+            if ((i % 2) == 0) {
+                fast.addElem("key" + i);
+            }
+        }
+        assertEquals(1000, small.getCurrentElemNum());
+
+        for (int i = 0; i < 2000; i++) {
+            String elem = "key" + i;
+            key.reset(elem.getBytes(SimpleBloomFilter.CHARSET));
+            assertEquals(small.mayContain(elem), small.mayContainHashed(key));
+            assertEquals(large.mayContain(elem), large.mayContainHashed(key));
+            assertEquals(fast.mayContain(elem), fast.mayContainHashed(key));
+        }
+    }
+
+    @Test
+    public void testHashedBank() throws Exception {
+        System.out.println("testHashedBank");
+        BloomFilterBank<String> bank = new BloomFilterBank<String>(1000, 0.01, 10);
+        int slot = bank.addSegment();
+        BloomKey key = new BloomKey("abc".getBytes(SimpleBloomFilter.CHARSET));
+        bank.addHashed(slot, key);
+
+        long[] segments = new long[bank.getSliceWordNum()];
+        assertTrue(bank.mayContain("abc", segments));
+        assertTrue(bank.mayContainHashed(key, segments));
+        assertEquals(1L << slot, segments[0]);
+    }
+
+    @Test
+    public void testHashedDefault() throws Exception {
+        System.out.println("testHashedDefault");
+        BloomFilter<String> exact = new ExactFilter();
+        byte[] bytes = "xxabcxx".getBytes(SimpleBloomFilter.CHARSET);
+        BloomKey key = new BloomKey().reset(bytes, 2, 3);
+        assertFalse(exact.mayContainHashed(key));
+
+        exact.addHashed(key);
+        assertTrue(exact.mayContain("abc"));
+        assertTrue(exact.mayContainHashed(key));
+        assertFalse(exact.mayContainHashed(new BloomKey().reset(bytes)));
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ *           DO WHAT THE FUCK YOU WANT TO PUBLIC LICENSE
+ * Everyone is permitted to copy and distribute verbatim or modified
+ * copies of this license document, and changing it is allowed as long
+ * as the name is changed. You just DO WHAT THE FUCK YOU WANT TO.
+ *                http://www.wtfpl.net/txt/copying/
+ */
+
+package org.schubert.bloom;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Unit Test for BloomStreams and BloomFilterProcessor.
+ */
+public class BloomStreamsTest {
+
+    @Test
+    public void testToBloomFilter() throws Exception {
+        System.out.println("testToBloomFilter");
+        SimpleBloomFilter<Long> bloom = LongStream.range(0, 10000).parallel().boxed()
+                .collect(BloomStreams.<Long>toBloomFilter(10000, 0.01));
+        assertEquals(10000, bloom.getCurrentElemNum());
+        for (long i = 0; i < 10000; i++) {
+            assertTrue(bloom.mayContain(i));
+        }
+    }
+
+    @Test
+    public void testToBloomFilterPerThread() throws Exception {
+        System.out.println("testToBloomFilterPerThread");
+        final AtomicInteger supplied = new AtomicInteger();
+        SimpleBloomFilter<Long> bloom = LongStream.range(0, 1000000).parallel().boxed()
+                .collect(BloomStreams.<Long>toBloomFilter(() -> {
+                    supplied.incrementAndGet();
+                    return new SimpleBloomFilter<Long>(1000000, 0.01);
+                }));
+        assertEquals(1000000, bloom.getCurrentElemNum());
+        assertTrue(supplied.get() <= ForkJoinPool.getCommonPoolParallelism() + 1);
+
+        SimpleBloomFilter<Long> empty = Stream.<Long>empty().collect(BloomStreams.<Long>toBloomFilter(100, 0.01));
+        assertTrue(empty.isEmpty());
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        System.out.println("testMerge");
+        SimpleBloomFilter<String> left = new SimpleBloomFilter<String>(1000, 0.01);
+        SimpleBloomFilter<String> right = new SimpleBloomFilter<String>(1000, 0.01);
+        left.addElem("left");
+        right.addElem("right");
+        left.merge(right);
+        assertTrue(left.mayContain("left"));
+        assertTrue(left.mayContain("right"));
+        assertFalse(right.mayContain("left"));
+        assertEquals(2, left.getCurrentElemNum());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeInvalidShape() throws Exception {
+        System.out.println("testMergeInvalidShape");
+        new SimpleBloomFilter<String>(1000, 0.01).merge(new SimpleBloomFilter<String>(1000, 0.02));
+    }
+
+    @Test
+    public void testAddElemIfAbsent() throws Exception {
+        System.out.println("testAddElemIfAbsent");
+        SimpleBloomFilter<String> bloom = new SimpleBloomFilter<String>(1000, 0.01);
+        assertTrue(bloom.addElemIfAbsent("abc"));
+        assertFalse(bloom.addElemIfAbsent("abc"));
+        assertTrue(bloom.mayContain("abc"));
+        assertEquals(1, bloom.getCurrentElemNum());
+    }
+
+    @Test
+    public void testAddElemIfAbsentConcurrently() throws Exception {
+        System.out.println("testAddElemIfAbsentConcurrently");
+        SimpleBloomFilter<Long> bloom = new SimpleBloomFilter<Long>(100000, 0.0001);
+        long absent = LongStream.range(0, 100000).parallel()
+                .filter(i -> bloom.addElemIfAbsentConcurrently(i)).count();
+        assertEquals(absent, bloom.getCurrentElemNum());
+        assertTrue(absent > 99900);
+        for (long i = 0; i < 100000; i++) {
+            assertTrue(bloom.mayContain(i));
+            assertFalse(bloom.addElemIfAbsentConcurrently(i));
+        }
+    }
+
+    @Test
+    public void testDistinctApprox() throws Exception {
+        System.out.println("testDistinctApprox");
+        List<Long> distinct = LongStream.range(0, 300000).parallel().map(i -> i % 1000).boxed()
+                .filter(BloomStreams.<Long>distinctApprox(1000, 0.0001))
+                .collect(Collectors.toList());
+        assertTrue(distinct.size() <= 1000);
+        assertTrue(distinct.size() > 990);
+        assertEquals(distinct.size(), distinct.stream().distinct().count());
+    }
+
+    @Test
+    public void testMightContainFilter() throws Exception {
+        System.out.println("testMightContainFilter");
+        BloomFilter<String> bloom = new SimpleBloomFilter<String>(1000, 0.0001);
+        bloom.addElem("a");
+        bloom.addElem("c");
+        List<String> found = Stream.of("a", "b", "c", "d")
+                .filter(BloomStreams.mightContainFilter(bloom))
+                .collect(Collectors.toList());
+        assertEquals(2, found.size());
+        assertEquals("a", found.get(0));
+        assertEquals("c", found.get(1));
+    }
+
+    @Test
+    public void testProcessor() throws Exception {
+        System.out.println("testProcessor");
+        SimpleBloomFilter<Integer> bloom = new SimpleBloomFilter<Integer>(1000, 0.0001);
+        final List<Integer> received = new ArrayList<Integer>();
+        BloomFilterProcessor<Integer> processor =
+                new BloomFilterProcessor<Integer>(bloom, BloomFilterProcessor.Mode.DISTINCT, 7);
+
+        SubmissionPublisher<Integer> source = new SubmissionPublisher<Integer>();
+        source.subscribe(processor);
+        CompletableFuture<Void> done = processor.consume(received::add);
+
+        for (int i = 0; i < 100; i++) {
+            source.submit(i % 30);
+        }
+        source.close();
+        done.get(10, TimeUnit.SECONDS);
+
+        assertEquals(30, received.size());
+        for (int i = 0; i < 30; i++) {
+            assertEquals(Integer.valueOf(i), received.get(i));
+        }
+    }
+
+    @Test
+    public void testProcessorFlush() throws Exception {
+        System.out.println("testProcessorFlush");
+        SimpleBloomFilter<Integer> bloom = new SimpleBloomFilter<Integer>(1000, 0.0001);
+        final List<Integer> received = new ArrayList<Integer>();
+        BloomFilterProcessor<Integer> processor =
+                new BloomFilterProcessor<Integer>(bloom, BloomFilterProcessor.Mode.DISTINCT, 8);
+
+        SubmissionPublisher<Integer> source = new SubmissionPublisher<Integer>();
+        source.subscribe(processor);
+        CompletableFuture<Void> done = processor.consume(received::add);
+
+        /* flush a partial batch, the drained elements must be requested again */
+        for (int i = 0; i < 3; i++) {
+            source.submit(i);
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while ((source.estimateMaximumLag() > 0) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(1);
+        }
+        processor.flush();
+
+        for (int i = 3; i < 40; i++) {
+            source.submit(i);
+        }
+        source.close();
+        done.get(10, TimeUnit.SECONDS);
+
+        assertEquals(40, received.size());
+        for (int i = 0; i < 40; i++) {
+            assertEquals(Integer.valueOf(i), received.get(i));
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *           DO WHAT THE FUCK YOU WANT TO PUBLIC LICENSE
+ * Everyone is permitted to copy and distribute verbatim or modified
+ * copies of this license document, and changing it is allowed as long
+ * as the name is changed. You just DO WHAT THE FUCK YOU WANT TO.
+ *                http://www.wtfpl.net/txt/copying/
+ */
+
+package org.schubert.bloom;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Unit Test for FrequencySketch.
+ */
+public class FrequencySketchTest {
+
+    @Test
+    public void testRecordAndEstimate() throws Exception {
+        System.out.println("testRecordAndEstimate");
+        FrequencySketch<String> sketch = new FrequencySketch<String>(1000);
+        assertEquals(10000, sketch.getSampleSize());
+        assertEquals(0, sketch.estimate("hot"));
+
+        for (int i = 1; i <= 20; i++) {
+            int frequency = sketch.recordAndEstimate("hot");
+            assertEquals(Math.min(i, FrequencySketch.MAX_COUNT + 1), frequency);
+        }
+        assertEquals(FrequencySketch.MAX_COUNT + 1, sketch.estimate("hot"));
+
+        assertEquals(1, sketch.recordAndEstimate("once"));
+        assertEquals(1, sketch.estimate("once"));
+        assertTrue(sketch.getDoorkeeper().mayContain("once"));
+    }
+
+    @Test
+    public void testEstimateAccuracy() throws Exception {
+        System.out.println("testEstimateAccuracy");
+        FrequencySketch<Integer> sketch = new FrequencySketch<Integer>(1000);
+        for (int i = 0; i < 1000; i++) {
+            for (int j = 0; j <= i % 5; j++) {
+                sketch.recordAndEstimate(i);
+            }
+        }
+
+        int exact = 0;
+        for (int i = 0; i < 1000; i++) {
+            int frequency = sketch.estimate(i);
+            assertTrue(frequency >= i % 5 + 1);
+            if (frequency == i % 5 + 1) {
+                exact++;
+            }
+        }
+        assertTrue(exact > 900);
+    }
+
+    @Test
+    public void testAge() throws Exception {
+        System.out.println("testAge");
+        FrequencySketch<String> sketch = new FrequencySketch<String>(100, 1000, null);
+        for (int i = 0; i < 11; i++) {
+            sketch.recordAndEstimate("key");
+        }
+        assertEquals(11, sketch.estimate("key"));
+
+        sketch.age();
+        assertEquals(5, sketch.estimate("key"));
+        assertTrue(sketch.getDoorkeeper().isEmpty());
+
+        /* aging by the sample size */
+        for (int i = 0; i < 1000; i++) {
+            sketch.recordAndEstimate(new byte[] {(byte) i, (byte) (i >> 8)});
+        }
+        assertEquals(2, sketch.estimate("key"));
+
+        sketch.clear();
+        assertEquals(0, sketch.estimate("key"));
+    }
+
+    @Test
+    public void testAdmit() throws Exception {
+        System.out.println("testAdmit");
+        FrequencySketch<Long> sketch = new FrequencySketch<Long>(1000, 10000,
+                (elem, sink) -> sink.putLong(elem));
+        for (int i = 0; i < 5; i++) {
+            sketch.recordAndEstimate(1L);
+        }
+        sketch.recordAndEstimate(2L);
+
+        assertTrue(sketch.admit(1L, 2L));
+        assertFalse(sketch.admit(2L, 1L));
+        assertFalse(sketch.admit(3L, 2L));
+
+        BloomKey key = new BloomKey().reset(1L, (Long elem, KeySink sink) -> sink.putLong(elem));
+        assertEquals(5, sketch.estimate(key));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorInvalidSampleSize() throws Exception {
+        System.out.println("testConstructorInvalidSampleSize");
+        new FrequencySketch<String>(1000, 0, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorInvalidElemNum() throws Exception {
+        System.out.println("testConstructorInvalidElemNum");
+        new FrequencySketch<String>(Long.MAX_VALUE / 5);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ *           DO WHAT THE FUCK YOU WANT TO PUBLIC LICENSE
+ * Everyone is permitted to copy and distribute verbatim or modified
+ * copies of this license document, and changing it is allowed as long
+ * as the name is changed. You just DO WHAT THE FUCK YOU WANT TO.
+ *                http://www.wtfpl.net/txt/copying/
+ */
+
+package org.schubert.bloom;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Unit Test for Funnel and KeySink.
+ */
+public class FunnelTest {
+
+    /* A composite key, which has no toString(). */
+    private static final class Event {
+        final int tenantId;
+        final long userId;
+        final long timestamp;
+
+        Event(int tenantId, long userId, long timestamp) {
+            this.tenantId  = tenantId;
+            this.userId    = userId;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private static final Funnel<Event> EVENT_FUNNEL = (event, sink) -> sink.putInt(event.tenantId)
+            .putLong(event.userId).putLong(event.timestamp);
+
+    @Test
+    public void testKeySink() throws Exception {
+        System.out.println("testKeySink");
+        ByteKeySink sink = new ByteKeySink();
+        sink.putByte((byte) 1).putInt(0x02030405).putLong(0x060708090a0b0c0dL).putChar((char) 0x0e0f)
+                .putBoolean(true).putChars("ab").putBytes(new byte[] {0x10, 0x11, 0x12}, 1, 2);
+        byte[] expect = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 1, 0, 'a', 0, 'b', 0x11, 0x12};
+        assertEquals(expect.length, sink.getLength());
+        for (int i = 0; i < expect.length; i++) {
+            assertEquals(expect[i], sink.getBytes()[i]);
+        }
+
+        /* grow the buffer */
+        sink.reset();
+        for (int i = 0; i < 100; i++) {
+            sink.putLong(i);
+        }
+        assertEquals(800, sink.getLength());
+        assertEquals(99, sink.getBytes()[799]);
+    }
+
+    @Test
+    public void testFunnelFilter() throws Exception {
+        System.out.println("testFunnelFilter");
+        SimpleBloomFilter<Event> bloom = new SimpleBloomFilter<Event>(10000, 0.001, EVENT_FUNNEL);
+        assertTrue(bloom.getFunnel() == EVENT_FUNNEL);
+        for (int i = 0; i < 10000; i++) {
+            bloom.addElem(new Event(i % 10, i, 1000L * i));
+        }
+
+        int falsePositive = 0;
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(bloom.mayContain(new Event(i % 10, i, 1000L * i)));
+            if (bloom.mayContain(new Event(i % 10 + 1, i, 1000L * i))) {
+                falsePositive++;
+            }
+        }
+        assertTrue(falsePositive < 100);
+        assertFalse(bloom.addElemIfAbsent(new Event(3, 3, 3000L)));
+
+        BloomKey key = new BloomKey().reset(new Event(7, 7, 7000L), EVENT_FUNNEL);
+        assertTrue(bloom.mayContainHashed(key));
+    }
+
+    @Test
+    public void testFunnelBank() throws Exception {
+        System.out.println("testFunnelBank");
+        SimpleBloomFilter<Event> bloom = new BloomFilterBuilder().elemNum(100).errorRate(0.01)
+                .build(EVENT_FUNNEL);
+        bloom.addElem(new Event(1, 2, 3));
+
+        BloomFilterBank<Event> bank = new BloomFilterBank<Event>(bloom.getBitSize(), bloom.getHashNum(),
+                bloom.getBitIndexing(), 8, EVENT_FUNNEL);
+        int slot = bank.addSegment(bloom);
+        long[] segments = new long[1];
+        assertTrue(bank.mayContain(new Event(1, 2, 3), segments));
+        assertEquals(1L << slot, segments[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeInvalidFunnel() throws Exception {
+        System.out.println("testMergeInvalidFunnel");
+        new SimpleBloomFilter<Event>(1000, 0.01, EVENT_FUNNEL).merge(new SimpleBloomFilter<Event>(1000, 0.01));
+    }
+}
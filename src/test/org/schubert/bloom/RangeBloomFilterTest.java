@@ -0,0 +1,104 @@
+/*
+ *           DO WHAT THE FUCK YOU WANT TO PUBLIC LICENSE
+ * Everyone is permitted to copy and distribute verbatim or modified
+ * copies of this license document, and changing it is allowed as long
+ * as the name is changed. You just DO WHAT THE FUCK YOU WANT TO.
+ *                http://www.wtfpl.net/txt/copying/
+ */
+
+package org.schubert.bloom;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Unit Test for RangeBloomFilter.
+ */
+public class RangeBloomFilterTest {
+    private static Random rand = new Random();
+
+    @Test
+    public void testMayContain() throws Exception {
+        System.out.println("testMayContain");
+        RangeBloomFilter bloom = new RangeBloomFilter(1000, 0.001);
+        assertTrue(bloom.isEmpty());
+        for (long key = -500; key < 500; key++) {
+            bloom.addElem(key * 1000);
+        }
+        assertEquals(1000, bloom.getCurrentElemNum());
+        assertFalse(bloom.isEmpty());
+
+        for (long key = -500; key < 500; key++) {
+            assertTrue(bloom.mayContain(key * 1000));
+        }
+
+        bloom.clear();
+        assertTrue(bloom.isEmpty());
+        assertFalse(bloom.mayContainRange(Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testMayContainRange() throws Exception {
+        System.out.println("testMayContainRange");
+        RangeBloomFilter bloom = new RangeBloomFilter(1000, 0.001);
+        for (long key = -500; key < 500; key++) {
+            bloom.addElem(key * 1000);
+        }
+
+        /* no false negative */
+        for (int i = 0; i < 1000; i++) {
+            long key = (rand.nextInt(1000) - 500) * 1000L;
+            long from = key - rand.nextInt(100000);
+            long to = key + rand.nextInt(100000);
+            assertTrue(bloom.mayContainRange(from, to));
+            assertTrue(bloom.mayContainRange(key, key));
+        }
+        assertTrue(bloom.mayContainRange(Long.MIN_VALUE, Long.MAX_VALUE));
+        assertTrue(bloom.mayContainRange(Long.MIN_VALUE, 0));
+        assertTrue(bloom.mayContainRange(0, Long.MAX_VALUE));
+
+        /* the gaps between keys */
+        int falsePositive = 0;
+        for (long key = -500; key < 499; key++) {
+            if (bloom.mayContainRange(key * 1000 + 1, key * 1000 + 999)) {
+                falsePositive++;
+            }
+        }
+        assertTrue(falsePositive < 50);
+        assertFalse(bloom.mayContainRange(-1000000, -500001));
+        assertFalse(bloom.mayContainRange(499001, 1000000));
+
+        /* too wide for the top level, the probes are used up */
+        assertTrue(bloom.mayContainRange(Long.MIN_VALUE, -500001));
+    }
+
+    @Test
+    public void testMayContainRangeExtremes() throws Exception {
+        System.out.println("testMayContainRangeExtremes");
+        RangeBloomFilter bloom = new RangeBloomFilter(10, 0.001, RangeBloomFilter.MAX_LEVEL_NUM, 1024);
+        bloom.addElem(Long.MIN_VALUE);
+        bloom.addElem(Long.MAX_VALUE);
+        assertTrue(bloom.mayContainRange(Long.MIN_VALUE, Long.MIN_VALUE));
+        assertTrue(bloom.mayContainRange(Long.MAX_VALUE, Long.MAX_VALUE));
+        assertTrue(bloom.mayContainRange(Long.MIN_VALUE, Long.MAX_VALUE));
+        assertFalse(bloom.mayContainRange(Long.MIN_VALUE + 1, Long.MAX_VALUE - 1));
+        assertFalse(bloom.mayContainRange(-1000000, 1000000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMayContainRangeInvalid() throws Exception {
+        System.out.println("testMayContainRangeInvalid");
+        new RangeBloomFilter(1000, 0.01).mayContainRange(10, 9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorInvalidLevelNum() throws Exception {
+        System.out.println("testConstructorInvalidLevelNum");
+        new RangeBloomFilter(1000, 0.01, RangeBloomFilter.MAX_LEVEL_NUM + 1, 100);
+    }
+}
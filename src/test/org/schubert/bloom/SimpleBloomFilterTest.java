@@ -298,5 +298,7 @@ public class SimpleBloomFilterTest {
         System.out.println("testCalcHashNum");
         int hashNum = SimpleBloomFilter.calcHashNum(775942L, 7777777L);
         assertEquals(7, hashNum);
+        hashNum = SimpleBloomFilter.calcHashNum(1000L, 14999L);
+        assertEquals(11, hashNum);
     }
 }